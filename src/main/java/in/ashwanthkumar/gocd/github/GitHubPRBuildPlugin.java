@@ -1,6 +1,5 @@
 package in.ashwanthkumar.gocd.github;
 
-import com.google.gson.reflect.TypeToken;
 import com.thoughtworks.go.plugin.api.GoApplicationAccessor;
 import com.thoughtworks.go.plugin.api.GoPlugin;
 import com.thoughtworks.go.plugin.api.GoPluginIdentifier;
@@ -8,34 +7,47 @@ import com.thoughtworks.go.plugin.api.annotation.Extension;
 import com.thoughtworks.go.plugin.api.logging.Logger;
 import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
-import com.tw.go.plugin.GitHelper;
 import com.tw.go.plugin.model.GitConfig;
 import com.tw.go.plugin.model.ModifiedFile;
 import com.tw.go.plugin.model.Revision;
 import com.tw.go.plugin.util.StringUtil;
+import in.ashwanthkumar.gocd.github.model.LatestRevisionResponse;
+import in.ashwanthkumar.gocd.github.model.RevisionMessage;
+import in.ashwanthkumar.gocd.github.model.ScmRequest;
+import in.ashwanthkumar.gocd.github.provider.ApiChangeDetector;
+import in.ashwanthkumar.gocd.github.provider.MaterialContext;
 import in.ashwanthkumar.gocd.github.provider.Provider;
-import in.ashwanthkumar.gocd.github.settings.scm.PluginConfigurationView;
+import in.ashwanthkumar.gocd.github.provider.PullRequestHeads;
+import in.ashwanthkumar.gocd.github.provider.PullRequestMetadataCache;
+import in.ashwanthkumar.gocd.github.provider.RevisionDataEnricher;
 import in.ashwanthkumar.gocd.github.util.BranchFilter;
 import in.ashwanthkumar.gocd.github.util.ExtendedGitCmdHelper;
 import in.ashwanthkumar.gocd.github.util.GitFactory;
 import in.ashwanthkumar.gocd.github.util.GitFolderFactory;
 import in.ashwanthkumar.gocd.github.util.JSONUtils;
+import in.ashwanthkumar.gocd.github.util.PluginMetrics;
+import in.ashwanthkumar.gocd.github.util.PollDeadline;
+import in.ashwanthkumar.gocd.github.util.PollTimeoutException;
+import in.ashwanthkumar.gocd.github.util.RepositoryLocks;
+import in.ashwanthkumar.gocd.github.util.RevisionBundles;
+import in.ashwanthkumar.gocd.github.util.SharedObjectCache;
 import in.ashwanthkumar.utils.collections.Lists;
-import org.apache.commons.collections4.MapUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.PrintStream;
-import java.io.UnsupportedEncodingException;
+import java.io.File;
 import java.lang.reflect.Constructor;
-import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
 import java.util.*;
-
-import static in.ashwanthkumar.gocd.github.util.JSONUtils.fromJSON;
+import java.util.stream.Stream;
+
+import static in.ashwanthkumar.gocd.github.settings.scm.ScmPluginConfigurationView.CLONE_FILTER_PROPERTY_NAME;
+import static in.ashwanthkumar.gocd.github.settings.scm.ScmPluginConfigurationView.SHARED_CACHE_PROPERTY_NAME;
+import static in.ashwanthkumar.gocd.github.settings.scm.ScmPluginConfigurationView.SPARSE_PATHS_PROPERTY_NAME;
+import static in.ashwanthkumar.gocd.github.util.PollDeadline.Phase.BUNDLE;
+import static in.ashwanthkumar.gocd.github.util.PollDeadline.Phase.ENRICHMENT;
+import static in.ashwanthkumar.gocd.github.util.PollDeadline.Phase.FETCH;
+import static in.ashwanthkumar.gocd.github.util.PollDeadline.Phase.FILTER;
+import static in.ashwanthkumar.gocd.github.util.PollDeadline.Phase.REF_SCAN;
 import static java.util.Collections.singletonList;
 import static java.util.stream.Collectors.joining;
 
@@ -61,19 +73,27 @@ public class GitHubPRBuildPlugin implements GoPlugin {
     public static final String REQUEST_CHECKOUT = "checkout";
 
     public static final String BRANCH_TO_REVISION_MAP = "BRANCH_TO_REVISION_MAP";
-    private static final String DATE_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+    public static final String API_HEADS = "API_HEADS";
+    public static final String API_SYNC_CURSOR = "API_SYNC_CURSOR";
+
+    public static final String TARGETED_CHECKOUT_FETCH_PROPERTY = "go.plugin.checkout.targeted-fetch";
+    public static final String CHECKOUT_FETCH_DEPTH_PROPERTY = "go.plugin.checkout.fetch-depth";
+    public static final String SUBMODULE_JOBS_PROPERTY = "go.plugin.checkout.submodule-jobs";
 
     public static final int SUCCESS_RESPONSE_CODE = 200;
     public static final int NOT_FOUND_RESPONSE_CODE = 404;
     public static final int INTERNAL_ERROR_RESPONSE_CODE = 500;
 
-    public static final TypeToken<Map<String, Object>> REQUEST_BODY_TYPE = new TypeToken<Map<String, Object>>(){};
-    public static final TypeToken<Map<String, String>> REVISION_MAP_TYPE = new TypeToken<Map<String, String>>(){};
-
     private Provider provider;
+    private final PullRequestMetadataCache prMetadataCache = PullRequestMetadataCache.shared();
+    private final RevisionDataEnricher enricher = RevisionDataEnricher.shared();
+    private final SharedObjectCache sharedObjectCache = SharedObjectCache.shared();
+    private final RevisionBundles revisionBundles = RevisionBundles.shared();
+    private final RepositoryLocks repositoryLocks = RepositoryLocks.shared();
     private final GitFactory gitFactory;
     private final GitFolderFactory gitFolderFactory;
     private GoApplicationAccessor goApplicationAccessor;
+    private volatile StaticResponses staticResponses;
 
     public GitHubPRBuildPlugin() {
         try {
@@ -84,6 +104,7 @@ public class GitHubPRBuildPlugin implements GoPlugin {
             Constructor<?> constructor = providerClass.getConstructor();
             provider = (Provider) constructor.newInstance();
             LOGGER.info("init(): Using provider " + provider.getName());
+            staticResponses = StaticResponses.render(provider);
             gitFactory = new GitFactory();
             gitFolderFactory = new GitFolderFactory();
         } catch (Exception e) {
@@ -106,23 +127,13 @@ public class GitHubPRBuildPlugin implements GoPlugin {
     @Override
     public GoPluginApiResponse handle(GoPluginApiRequest goPluginApiRequest) {
         if (goPluginApiRequest.requestName().equals(REQUEST_SCM_CONFIGURATION)) {
-            return handleSCMConfiguration();
+            return staticResponses().scmConfiguration();
         } else if (goPluginApiRequest.requestName().equals(REQUEST_SCM_VIEW)) {
-            try {
-                return handleSCMView();
-            } catch (IOException e) {
-                String message = "Failed to find template: " + e.getMessage();
-                return renderJSON(INTERNAL_ERROR_RESPONSE_CODE, message);
-            }
+            return staticResponses().scmView();
         } else if (goPluginApiRequest.requestName().equals(REQUEST_PLUGIN_CONFIGURATION)) {
-            return handlePluginConfiguration();
+            return staticResponses().pluginConfiguration();
         } else if (goPluginApiRequest.requestName().equals(REQUEST_PLUGIN_VIEW)) {
-            try {
-                return handlePluginView();
-            } catch (IOException e) {
-                String message = "Failed to find template: " + e.getMessage();
-                return renderJSON(INTERNAL_ERROR_RESPONSE_CODE, message);
-            }
+            return staticResponses().pluginView();
         }  else if (goPluginApiRequest.requestName().equals(REQUEST_VALIDATE_PLUGIN_CONFIGURATION)) {
             return handlePluginValidation(goPluginApiRequest);
         }  else if (goPluginApiRequest.requestName().equals(REQUEST_VALIDATE_SCM_CONFIGURATION)) {
@@ -150,53 +161,30 @@ public class GitHubPRBuildPlugin implements GoPlugin {
 
     void setProvider(Provider provider) {
         this.provider = provider;
+        this.staticResponses = null;
     }
 
-    private GoPluginApiResponse handlePluginView() throws IOException {
-        return getPluginView(provider, provider.getGeneralConfigurationView());
-    }
-
-    private GoPluginApiResponse handlePluginConfiguration() {
-        return getPluginConfiguration(provider.getGeneralConfigurationView());
-    }
-
-    private GoPluginApiResponse handleSCMView() throws IOException {
-        return getPluginView(provider, provider.getScmConfigurationView());
-    }
-
-    private GoPluginApiResponse handleSCMConfiguration() {
-        return getPluginConfiguration(provider.getScmConfigurationView());
-    }
-
-    private GoPluginApiResponse getPluginView(Provider provider, PluginConfigurationView view) throws IOException {
-        if (view.hasConfigurationView()) {
-            Map<String, Object> response = new HashMap<>();
-            response.put("displayValue", provider.getName());
-            response.put("template", getFileContents(view.templateName()));
-            return renderJSON(SUCCESS_RESPONSE_CODE, response);
-        } else {
-            return renderJSON(NOT_FOUND_RESPONSE_CODE, null);
+    private StaticResponses staticResponses() {
+        StaticResponses responses = staticResponses;
+        if (responses == null || !responses.isFor(provider)) {
+            responses = StaticResponses.render(provider);
+            staticResponses = responses;
         }
-    }
-
-    private GoPluginApiResponse getPluginConfiguration(PluginConfigurationView view) {
-        Map<String, Object> response = view.fields();
-        return renderJSON(SUCCESS_RESPONSE_CODE, response);
+        return responses;
     }
 
     private GoPluginApiResponse handleSCMValidation(GoPluginApiRequest goPluginApiRequest) {
-        Map<String, Object> requestBodyMap = fromJSON(goPluginApiRequest.requestBody(), REQUEST_BODY_TYPE);
-        final Map<String, String> configuration = keyValuePairs(requestBodyMap, "scm-configuration");
+        final Map<String, String> configuration = ScmRequest.fromJSON(goPluginApiRequest.requestBody()).getScmConfiguration();
         final GitConfig gitConfig = getGitConfig(configuration);
 
         List<Map<String, Object>> response = new ArrayList<>();
         validate(response, fieldValidation -> validateUrl(gitConfig, fieldValidation));
+        validate(response, fieldValidation -> validateCloneFilter(gitConfig, fieldValidation));
         return renderJSON(SUCCESS_RESPONSE_CODE, response);
     }
 
     private GoPluginApiResponse handleSCMCheckConnection(GoPluginApiRequest goPluginApiRequest) {
-        Map<String, Object> requestBodyMap = fromJSON(goPluginApiRequest.requestBody(), REQUEST_BODY_TYPE);
-        Map<String, String> configuration = keyValuePairs(requestBodyMap, "scm-configuration");
+        Map<String, String> configuration = ScmRequest.fromJSON(goPluginApiRequest.requestBody()).getScmConfiguration();
         GitConfig gitConfig = getGitConfig(configuration);
 
         Map<String, Object> response = new HashMap<>();
@@ -214,39 +202,76 @@ public class GitHubPRBuildPlugin implements GoPlugin {
     }
 
     GoPluginApiResponse handleGetLatestRevision(GoPluginApiRequest goPluginApiRequest) {
-        Map<String, Object> requestBodyMap = fromJSON(goPluginApiRequest.requestBody(), REQUEST_BODY_TYPE);
-        Map<String, String> configuration = keyValuePairs(requestBodyMap, "scm-configuration");
+        ScmRequest request = ScmRequest.fromJSON(goPluginApiRequest.requestBody());
+        Map<String, String> configuration = request.getScmConfiguration();
         GitConfig gitConfig = getGitConfig(configuration);
-        String flyweightFolder = (String) requestBodyMap.get("flyweight-folder");
+        String flyweightFolder = request.getFlyweightFolder();
         LOGGER.info(String.format("Flyweight: %s", flyweightFolder));
+        PollDeadline deadline = PollDeadline.start(gitConfig.getUrl());
 
         try {
-            GitHelper git = gitFactory.create(gitConfig, gitFolderFactory.create(flyweightFolder));
-            Map<String, String> branchToRevisionMap = buildBranchToRevisionMap(git);
+            ExtendedGitCmdHelper git = gitFactory.create(gitConfig, gitFolderFactory.create(flyweightFolder));
+            File repository = new File(flyweightFolder);
+            PullRequestHeads apiHeads = deadline.run(REF_SCAN, () -> listHeadsThroughApi(gitConfig, null));
+            Map<String, String> apiHeadMap = apiHeads == null ? null : apiHeads.applyTo(Collections.emptyMap());
+            Map<String, String> branchToRevisionMap = apiHeadMap == null ? buildBranchToRevisionMap(git, repository, deadline) : new HashMap<>(apiHeadMap);
+            Map<String, String> apiSyncData = apiSyncData(apiHeads, apiHeadMap);
 
-            Pair<String, String> newerRevision = findNewerPrRevision(git, gitConfig, Collections.emptyMap(), branchToRevisionMap, configuration);
+            Pair<String, String> newerRevision = deadline.run(FILTER,
+                    () -> repositoryLocks.read(repository,
+                            () -> findNewerPrRevision(git, gitConfig, Collections.emptyMap(), branchToRevisionMap, configuration)));
 
             if (newerRevision == null) {
                 LOGGER.debug(String.format("No new PRs found for %s. Revisions: %s", gitConfig.getUrl(), branchToRevisionMap));
-                return buildLatestRevisionResponse(gitConfig, null, branchToRevisionMap);
+                return buildLatestRevisionResponse(gitConfig, null, branchToRevisionMap, apiSyncData);
             }
 
             // Remove all other branches from the response to ensure the next time those will be picked up by GoCD
             branchToRevisionMap.entrySet().removeIf(entry -> !Objects.equals(entry.getKey(), newerRevision.getKey()));
 
-            Revision revision = git.getDetailsForRevision(newerRevision.getValue());
             String branch = newerRevision.getKey();
-
-            Map<String, Object> revisionMap = populateRevisionMap(gitConfig, branch, revision);
-            LOGGER.info(String.format("Triggered build for %s with head at %s. Config URL: %s",
-                    branch, revision.getRevision(), gitConfig.getUrl()));
-            return buildLatestRevisionResponse(gitConfig, revisionMap, branchToRevisionMap);
+            prMetadataCache.retainHead(gitConfig.getUrl(), branch, newerRevision.getValue());
+            enricher.prefetch(provider, gitConfig, Collections.singletonMap(branch, newerRevision.getValue()));
+            if (apiHeads != null) {
+                fetchPullRequest(git, repository, gitConfig, branch, deadline);
+            }
+            RevisionMessage revisionMessage = deadline.run(ENRICHMENT, () -> {
+                Revision revision = repositoryLocks.read(repository,
+                        () -> git.getDetailsForRevision(newerRevision.getValue()));
+                // the enrichment only talks to the provider, other requests may use the repository meanwhile
+                RevisionDataEnricher.Poll enrichment = enricher.startPoll(deadline.remainingFor(ENRICHMENT));
+                RevisionMessage populated = populateRevisionMap(gitConfig, branch, revision, enrichment);
+                if (enrichment.holdBack()) {
+                    LOGGER.info(String.format("Holding back %s of %s until its enrichment completes: %s",
+                            branch, gitConfig.getUrl(), enrichment));
+                    return null;
+                }
+                LOGGER.info(String.format("Triggered build for %s with head at %s. Config URL: %s. Enrichment: %s",
+                        branch, revision.getRevision(), gitConfig.getUrl(), enrichment));
+                return populated;
+            });
+            if (revisionMessage == null) {
+                // Without a revision GoCD asks for the latest revision again on the next poll
+                return buildLatestRevisionResponse(gitConfig, null, Collections.emptyMap(), apiSyncData);
+            }
+            publishBundle(git, repository, gitConfig, newerRevision.getValue(), null, deadline);
+            LOGGER.info(String.format("Poll of %s took %s", gitConfig.getUrl(), deadline));
+            return buildLatestRevisionResponse(gitConfig, revisionMessage, branchToRevisionMap, apiSyncData);
+        } catch (PollTimeoutException e) {
+            return renderPollTimeout(gitConfig, deadline, e);
         } catch (Throwable t) {
             LOGGER.warn("get latest revision: ", t);
             return renderJSON(INTERNAL_ERROR_RESPONSE_CODE, removeUsernameAndPassword(t.getMessage(), gitConfig));
         }
     }
 
+    private GoPluginApiResponse renderPollTimeout(GitConfig gitConfig, PollDeadline deadline, PollTimeoutException e) {
+        PluginMetrics.shared().increment("poll.timed-out");
+        String message = String.format("%s. Time spent per phase: %s", e.getMessage(), deadline);
+        LOGGER.warn(message);
+        return renderJSON(INTERNAL_ERROR_RESPONSE_CODE, removeUsernameAndPassword(message, gitConfig));
+    }
+
     private String removeUsernameAndPassword(String message, GitConfig gitConfig) {
         String messageForDisplay = message;
         String password = gitConfig.getPassword();
@@ -261,150 +286,245 @@ public class GitHubPRBuildPlugin implements GoPlugin {
     }
 
     GoPluginApiResponse handleLatestRevisionSince(GoPluginApiRequest goPluginApiRequest) {
-        Map<String, Object> requestBodyMap = fromJSON(goPluginApiRequest.requestBody(), REQUEST_BODY_TYPE);
-        Map<String, String> configuration = keyValuePairs(requestBodyMap, "scm-configuration");
+        ScmRequest request = ScmRequest.fromJSON(goPluginApiRequest.requestBody());
+        Map<String, String> configuration = request.getScmConfiguration();
         final GitConfig gitConfig = getGitConfig(configuration);
-        Map<String, String> scmData = (Map<String, String>) requestBodyMap.get("scm-data");
-        Map<String, String> oldPrRevisionMap = fromJSON(scmData.get(BRANCH_TO_REVISION_MAP), REVISION_MAP_TYPE);
-        String flyweightFolder = (String) requestBodyMap.get("flyweight-folder");
+        Map<String, String> oldPrRevisionMap = request.getScmDataMap(BRANCH_TO_REVISION_MAP);
+        String flyweightFolder = request.getFlyweightFolder();
         LOGGER.info(String.format("Fetching latest for: %s", gitConfig.getUrl()));
+        PollDeadline deadline = PollDeadline.start(gitConfig.getUrl());
 
         try {
-            GitHelper git = gitFactory.create(gitConfig, gitFolderFactory.create(flyweightFolder));
-            Map<String, String> newPrToRevisionMap = buildBranchToRevisionMap(git);
-
-            Pair<String, String> newerRevision = findNewerPrRevision(git, gitConfig, oldPrRevisionMap, newPrToRevisionMap,
-                    configuration);
-
-            if (newerRevision == null) {
+            ExtendedGitCmdHelper git = gitFactory.create(gitConfig, gitFolderFactory.create(flyweightFolder));
+            File repository = new File(flyweightFolder);
+            String cursor = request.hasScmData(API_HEADS) ? request.getScmData().get(API_SYNC_CURSOR) : null;
+            PullRequestHeads apiHeads = deadline.run(REF_SCAN, () -> listHeadsThroughApi(gitConfig, cursor));
+            Map<String, String> apiHeadMap = apiHeads == null ? null
+                    : apiHeads.applyTo(cursor == null ? Collections.emptyMap() : request.getScmDataMap(API_HEADS));
+            Map<String, String> newPrToRevisionMap = apiHeadMap == null ? buildBranchToRevisionMap(git, repository, deadline) : new HashMap<>(apiHeadMap);
+            Map<String, String> apiSyncData = apiSyncData(apiHeads, apiHeadMap);
+
+            Map<String, String> changedPrRevisions = deadline.run(FILTER,
+                    () -> repositoryLocks.read(repository,
+                            () -> findChangedPrRevisions(git, gitConfig, oldPrRevisionMap, newPrToRevisionMap, configuration)));
+
+            if (changedPrRevisions.isEmpty()) {
                 LOGGER.debug(String.format("No updated PRs found for %s. Old: %s New: %s", gitConfig.getUrl(), oldPrRevisionMap,
                         newPrToRevisionMap));
-                return buildLatestRevisionsResponse(gitConfig, null, newPrToRevisionMap);
+                return buildLatestRevisionsResponse(gitConfig, null, newPrToRevisionMap, apiSyncData);
             }
 
-            String pr = newerRevision.getKey();
-            String latestSHA = newerRevision.getValue();
+            // Return only one of them, GoCD skips the other revisions of a response
+            String pr = changedPrRevisions.keySet().iterator().next();
+            String latestSHA = changedPrRevisions.get(pr);
             String lastKnownSHA = oldPrRevisionMap.get(pr);
             LOGGER.info(String.format("new commits for %s PR %s, latest commit %s", gitConfig.getUrl(), pr, latestSHA));
-            List<Map<String, Object>> revisions = findAllRevisionsSince(git, gitConfig, pr, lastKnownSHA, latestSHA);
+            prMetadataCache.retainHead(gitConfig.getUrl(), pr, latestSHA);
+            // Enrichment of the returned PR overlaps with the git work. The PRs later polls return are left alone,
+            // their look-ahead would fill the queue other repositories need now.
+            enricher.prefetch(provider, gitConfig, Collections.singletonMap(pr, latestSHA));
+            if (apiHeads != null) {
+                fetchPullRequest(git, repository, gitConfig, pr, deadline);
+            }
+            List<RevisionMessage> revisions = deadline.run(ENRICHMENT, () -> {
+                List<Revision> found = repositoryLocks.read(repository,
+                        () -> findAllRevisionsSince(git, lastKnownSHA, latestSHA));
+                // the enrichment only talks to the provider, other requests may use the repository meanwhile
+                RevisionDataEnricher.Poll enrichment = enricher.startPoll(deadline.remainingFor(ENRICHMENT));
+                List<RevisionMessage> populated = Lists.map(found,
+                        revision -> populateRevisionMap(gitConfig, pr, latestSHA, revision, enrichment));
+                LOGGER.info(String.format("Enrichment of %s PR %s: %s", gitConfig.getUrl(), pr, enrichment));
+                return enrichment.holdBack() ? null : populated;
+            });
+            if (revisions == null) {
+                // Keep the previous head of the PR, so the next poll returns it again with the finished enrichment
+                LOGGER.info(String.format("Holding back %s PR %s until its enrichment completes", gitConfig.getUrl(), pr));
+                return buildLatestRevisionsResponse(gitConfig, null, oldPrRevisionMap, apiSyncData);
+            }
             LOGGER.debug(String.format("Commits on %s since previous %s: %s", gitConfig.getUrl(), lastKnownSHA,
-                    revisions.stream().map(m -> (String) m.get("revision")).collect(joining(", "))));
+                    revisions.stream().map(RevisionMessage::getRevision).collect(joining(", "))));
+            publishBundle(git, repository, gitConfig, latestSHA, lastKnownSHA, deadline);
+            LOGGER.info(String.format("Poll of %s took %s", gitConfig.getUrl(), deadline));
 
             // We shouldn't return any new PRs from newPRToRevisionMap.
             // Instead of that, we can always return the old map and update only the one PR
             // that we will return (as found in newerRevision).
             Map<String, String> updatedPrToRevisionMap = new HashMap<>(oldPrRevisionMap);
             updatedPrToRevisionMap.put(pr, latestSHA);
+            updatedPrToRevisionMap = provider.collapseBranchToRevisionMap(updatedPrToRevisionMap);
 
-            return buildLatestRevisionsResponse(gitConfig, revisions, updatedPrToRevisionMap);
+            return buildLatestRevisionsResponse(gitConfig, revisions, updatedPrToRevisionMap, apiSyncData);
+        } catch (PollTimeoutException e) {
+            return renderPollTimeout(gitConfig, deadline, e);
         } catch (Throwable t) {
             LOGGER.warn("Failed to get latest revisions for " + gitConfig.getUrl(), t);
             return renderJSON(INTERNAL_ERROR_RESPONSE_CODE, removeUsernameAndPassword(t.getMessage(), gitConfig));
         }
     }
 
-    private Map<String, String> buildBranchToRevisionMap(GitHelper git) {
-        git.cloneOrFetch(provider.getRefSpec());
-        Map<String, String> newBranchToRevisionMap = git.getBranchToRevisionMap(provider.getRefPattern());
-        git.submoduleUpdate();
+    private Map<String, String> buildBranchToRevisionMap(ExtendedGitCmdHelper git, File repository, PollDeadline deadline) {
+        deadline.run(FETCH, () -> repositoryLocks.fetch(repository, provider.getRefSpec(),
+                () -> git.cloneOrFetch(provider.getRefSpec())));
+        Map<String, String> newBranchToRevisionMap = deadline.run(REF_SCAN, () -> repositoryLocks.read(repository,
+                () -> provider.collapseBranchToRevisionMap(git.getBranchToRevisionMap(provider.getRefPattern()))));
+        deadline.run(FETCH, () -> repositoryLocks.write(repository, git::submoduleUpdate));
 
         return newBranchToRevisionMap;
     }
 
-    private Pair<String, String> findNewerPrRevision(GitHelper git, GitConfig gitConfig, Map<String, String> oldBranchToRevisionMap,
+    private PullRequestHeads listHeadsThroughApi(GitConfig gitConfig, String cursor) {
+        if (!(provider instanceof ApiChangeDetector) || !((ApiChangeDetector) provider).isApiChangeDetectionEnabled()) {
+            return null;
+        }
+        try {
+            PullRequestHeads heads = ((ApiChangeDetector) provider).listHeadsSince(gitConfig, cursor);
+            if (heads == null) {
+                LOGGER.info(String.format("API change detection unavailable for %s, fetching all PR refs", gitConfig.getUrl()));
+            } else {
+                LOGGER.debug(String.format("PRs updated on %s since %s: %s", gitConfig.getUrl(), cursor, heads.getUpdatedHeads()));
+            }
+            return heads;
+        } catch (Exception e) {
+            LOGGER.warn(String.format("API change detection failed for %s, fetching all PR refs", gitConfig.getUrl()), e);
+            return null;
+        }
+    }
+
+    private void fetchPullRequest(ExtendedGitCmdHelper git, File repository, GitConfig gitConfig, String branch,
+            PollDeadline deadline) {
+        LOGGER.info(String.format("Fetching only PR %s of %s", branch, gitConfig.getUrl()));
+        String refSpec = ((ApiChangeDetector) provider).getRefSpec(branch);
+        deadline.run(FETCH, () -> repositoryLocks.fetch(repository, refSpec, () -> {
+            git.cloneOrFetch(refSpec);
+            git.submoduleUpdate();
+        }));
+    }
+
+    private Map<String, String> apiSyncData(PullRequestHeads apiHeads, Map<String, String> apiHeadMap) {
+        Map<String, String> apiSyncData = new HashMap<>();
+        if (apiHeads != null && apiHeads.getCursor() != null) {
+            apiSyncData.put(API_HEADS, JSONUtils.toJSON(apiHeadMap));
+            apiSyncData.put(API_SYNC_CURSOR, apiHeads.getCursor());
+        }
+        return apiSyncData;
+    }
+
+    private Pair<String, String> findNewerPrRevision(ExtendedGitCmdHelper git, GitConfig gitConfig, Map<String, String> oldBranchToRevisionMap,
+            Map<String, String> newBranchToRevisionMap, Map<String, String> configuration) {
+        // If there are any changes we should return the only one of them.
+        // Otherwise, GoCD skips other changes (revisions) in this call.
+        // You can think about it like if we always return a minimum item
+        // of a set with comparable items.
+        return changedPrRevisions(git, gitConfig, oldBranchToRevisionMap, newBranchToRevisionMap, configuration)
+                .findFirst()
+                .map(entry -> Pair.of(entry.getKey(), entry.getValue()))
+                .orElse(null);
+    }
+
+    private Map<String, String> findChangedPrRevisions(ExtendedGitCmdHelper git, GitConfig gitConfig, Map<String, String> oldBranchToRevisionMap,
             Map<String, String> newBranchToRevisionMap, Map<String, String> configuration) {
+        Map<String, String> changedPrRevisions = new LinkedHashMap<>();
+        changedPrRevisions(git, gitConfig, oldBranchToRevisionMap, newBranchToRevisionMap, configuration)
+                .forEachOrdered(entry -> changedPrRevisions.put(entry.getKey(), entry.getValue()));
+        return changedPrRevisions;
+    }
+
+    /**
+     * PR heads that pass the branch filter and changed since the old map, lazily in the order of the new map.
+     */
+    private Stream<Map.Entry<String, String>> changedPrRevisions(ExtendedGitCmdHelper git, GitConfig gitConfig,
+            Map<String, String> oldBranchToRevisionMap, Map<String, String> newBranchToRevisionMap, Map<String, String> configuration) {
         BranchFilter branchFilter = provider
                 .getScmConfigurationView()
                 .getBranchFilter(configuration);
 
-        for (String branch : newBranchToRevisionMap.keySet()) {
-            if (branchFilter.isBranchValid(branch, git)) {
-                LOGGER.info(String.format("Branch valid for %s: %s", gitConfig.getUrl(), branch));
-                if (branchHasNewChange(oldBranchToRevisionMap.get(branch), newBranchToRevisionMap.get(branch))) {
-                    // If there are any changes we should return the only one of them.
-                    // Otherwise, GoCD skips other changes (revisions) in this call.
-                    // You can think about it like if we always return a minimum item
-                    // of a set with comparable items.
-                    LOGGER.info(String.format("Branch %s for %s has new changes to be built", branch, gitConfig.getUrl()));
-                    String newValue = newBranchToRevisionMap.get(branch);
-                    return Pair.of(branch, newValue);
-                } else {
-                    LOGGER.info(String.format("Branch %s for %s does not have any new changes", branch, gitConfig.getUrl()));
-                }
-            } else {
+        return newBranchToRevisionMap.entrySet().stream().filter(entry -> {
+            String branch = entry.getKey();
+            if (!branchFilter.isBranchValid(branch, git)) {
                 LOGGER.info(String.format("Branch %s for %s is filtered by branch matcher", branch, gitConfig.getUrl()));
+                return false;
             }
-        }
-
-        return null;
+            if (!branchHasNewChange(oldBranchToRevisionMap.get(branch), entry.getValue())) {
+                LOGGER.info(String.format("Branch %s for %s does not have any new changes", branch, gitConfig.getUrl()));
+                return false;
+            }
+            LOGGER.info(String.format("Branch %s for %s has new changes to be built", branch, gitConfig.getUrl()));
+            return true;
+        });
     }
 
-    private List<Map<String, Object>> findAllRevisionsSince(GitHelper git, GitConfig gitConfig, String branch, String lastKnownSHA,
-            String latestSHA) {
-        List<Map<String, Object>> revisions = new ArrayList<>();
-
-        if(StringUtils.isNotEmpty(lastKnownSHA)) {
-            git.resetHard(latestSHA);
-            List<Revision> allRevisionsSince;
+    private List<Revision> findAllRevisionsSince(ExtendedGitCmdHelper git, String lastKnownSHA, String latestSHA) {
+        if (StringUtils.isNotEmpty(lastKnownSHA)) {
             try {
-                allRevisionsSince = git.getRevisionsSince(lastKnownSHA);
+                return git.getRevisionsBetween(lastKnownSHA, latestSHA);
             } catch (Exception e) {
-                allRevisionsSince = singletonList(git.getLatestRevision());
+                return singletonList(git.getDetailsForRevision(latestSHA));
             }
-            List<Map<String, Object>> changesSinceLastCommit = Lists.map(allRevisionsSince,
-                    revision -> populateRevisionMap(gitConfig, branch, revision));
-            revisions.addAll(changesSinceLastCommit);
-        } else {
-            Revision revision = git.getDetailsForRevision(latestSHA);
-            Map<String, Object> revisionMap = populateRevisionMapForSHA(gitConfig, branch, revision);
-            revisions.add(revisionMap);
         }
-
-        return revisions;
-    }
-
-    private Map<String, Object> populateRevisionMapForSHA(GitConfig gitConfig, String branch, Revision revision) {
+        Revision revision = git.getDetailsForRevision(latestSHA);
         // patch for building merge commits
         List<ModifiedFile> modifiedFiles = revision.getModifiedFiles();
         if (revision.isMergeCommit() && (modifiedFiles == null || modifiedFiles.isEmpty())) {
             revision.setModifiedFiles(Lists.of(new ModifiedFile("/dev/null", "deleted")));
         }
-
-        return populateRevisionMap(gitConfig, branch, revision);
+        return singletonList(revision);
     }
 
-    private GoPluginApiResponse buildLatestRevisionResponse(GitConfig gitConfig, Map<String, Object> revision,
-            Map<String, String> updatedPrToRevisionMap) {
-        Map<String, Object> response = new HashMap<>();
-        if (revision != null) {
-            response.put("revision", revision);
-        }
-        return addScmDataAndBuildResponse(gitConfig, updatedPrToRevisionMap, response);
+    private GoPluginApiResponse buildLatestRevisionResponse(GitConfig gitConfig, RevisionMessage revision,
+            Map<String, String> updatedPrToRevisionMap, Map<String, String> apiSyncData) {
+        LatestRevisionResponse response = LatestRevisionResponse.ofRevision(revision, scmData(updatedPrToRevisionMap, apiSyncData));
+        return renderLatestRevisionResponse(gitConfig, response);
     }
 
-    private GoPluginApiResponse buildLatestRevisionsResponse(GitConfig gitConfig, List<Map<String, Object>> revisions,
-            Map<String, String> updatedPrToRevisionMap) {
-        Map<String, Object> response = new HashMap<>();
-        if (revisions != null) {
-            response.put("revisions", revisions);
-        }
-        return addScmDataAndBuildResponse(gitConfig, updatedPrToRevisionMap, response);
+    private GoPluginApiResponse buildLatestRevisionsResponse(GitConfig gitConfig, List<RevisionMessage> revisions,
+            Map<String, String> updatedPrToRevisionMap, Map<String, String> apiSyncData) {
+        LatestRevisionResponse response = LatestRevisionResponse.ofRevisions(revisions, scmData(updatedPrToRevisionMap, apiSyncData));
+        return renderLatestRevisionResponse(gitConfig, response);
     }
 
-    private GoPluginApiResponse addScmDataAndBuildResponse(GitConfig gitConfig, Map<String, String> updatedPrToRevisionMap, Map<String, Object> response) {
-        Map<String, String> scmDataMap = new HashMap<>();
+    private Map<String, String> scmData(Map<String, String> updatedPrToRevisionMap, Map<String, String> apiSyncData) {
+        Map<String, String> scmDataMap = new HashMap<>(apiSyncData);
         scmDataMap.put(BRANCH_TO_REVISION_MAP, JSONUtils.toJSON(updatedPrToRevisionMap));
-        response.put("scm-data", scmDataMap);
+        return scmDataMap;
+    }
 
+    private GoPluginApiResponse renderLatestRevisionResponse(GitConfig gitConfig, LatestRevisionResponse response) {
+        GoPluginApiResponse rendered = renderJSON(SUCCESS_RESPONSE_CODE, response);
         if (gitConfig.getUrl().contains("sample-kit-mapper")) {
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
-            PrintStream ps = new PrintStream(os);
-            MapUtils.debugPrint(ps, "SCM Data", response);
-            try {
-                LOGGER.info(os.toString("UTF8"));
-            } catch (UnsupportedEncodingException e) {}
+            LOGGER.info("SCM Data: " + rendered.responseBody());
+        }
+        return rendered;
+    }
+
+    /**
+     * Bundle the new revision for the agents that will check it out, against the default branch and the previous
+     * revision of the PR, which workspaces of the material most likely have already. Best effort within what is
+     * left of the poll, the checkout falls back to fetching from the Git host.
+     */
+    private void publishBundle(ExtendedGitCmdHelper git, File repository, GitConfig gitConfig, String revision,
+            String previousRevision, PollDeadline deadline) {
+        if (!revisionBundles.isEnabled()) {
+            return;
+        }
+        try {
+            String branch = gitConfig.getEffectiveBranch();
+            String branchRefSpec = String.format("+refs/heads/%s:refs/remotes/origin/%s", branch, branch);
+            List<String> basis = new ArrayList<>();
+            basis.add("refs/remotes/origin/" + branch);
+            if (StringUtils.isNotEmpty(previousRevision)) {
+                basis.add(previousRevision);
+            }
+            File bundle = deadline.run(BUNDLE, () -> {
+                // polls fetch only the PR refs, bring the default branch up to date so the bundle leaves it out
+                repositoryLocks.fetch(repository, branchRefSpec, () -> git.fetch(branchRefSpec));
+                // the bundle is written from a temporary ref
+                return repositoryLocks.write(repository,
+                        () -> revisionBundles.publish(git, gitConfig.getUrl(), revision, basis));
+            });
+            LOGGER.debug(String.format("Bundle of %s for %s: %s", revision, gitConfig.getUrl(), bundle));
+        } catch (Exception e) {
+            LOGGER.warn(String.format("Could not publish bundle of %s for %s", revision, gitConfig.getUrl()), e);
         }
-        return renderJSON(SUCCESS_RESPONSE_CODE, response);
     }
 
     private boolean branchHasNewChange(String previousSHA, String latestSHA) {
@@ -412,28 +532,24 @@ public class GitHubPRBuildPlugin implements GoPlugin {
     }
 
     private GoPluginApiResponse handleCheckout(GoPluginApiRequest goPluginApiRequest) {
-        Map<String, Object> requestBodyMap = fromJSON(goPluginApiRequest.requestBody(), REQUEST_BODY_TYPE);
-        Map<String, String> configuration = keyValuePairs(requestBodyMap, "scm-configuration");
-        GitConfig gitConfig = getGitConfig(configuration);
-        String destinationFolder = (String) requestBodyMap.get("destination-folder");
-        Map<String, Object> revisionMap = (Map<String, Object>) requestBodyMap.get("revision");
-        Map<String, String> customDataBag = (Map<String, String>) revisionMap.getOrDefault("data", Collections.emptyMap());
-        String revision = (String) revisionMap.get("revision");
+        ScmRequest request = ScmRequest.fromJSON(goPluginApiRequest.requestBody());
+        GitConfig gitConfig = getGitConfig(request.getScmConfiguration());
+        String destinationFolder = request.getDestinationFolder();
+        Map<String, String> customDataBag = request.getRevision().getData();
+        String revision = request.getRevision().getRevision();
         LOGGER.info(String.format("destination: %s. commit: %s", destinationFolder, revision));
 
         try {
-            ExtendedGitCmdHelper git = gitFactory.create(gitConfig, gitFolderFactory.create(destinationFolder));
-            git.cloneOrFetch(provider.getRefSpec());
-
-            String branch = customDataBag.getOrDefault("PR_CHECKOUT_BRANCH", "gocd-pr");
-            git.checkoutNewBranch(branch);
-
-            git.resetHard(revision);
-            git.submoduleUpdate();
-
+            long startMillis = System.currentTimeMillis();
+            File workingDir = gitFolderFactory.create(destinationFolder);
+            ExtendedGitCmdHelper git = gitFactory.create(gitConfig, workingDir);
+            boolean sharedCache = Boolean.parseBoolean(request.getScmConfiguration().get(SHARED_CACHE_PROPERTY_NAME));
+            // the workspace is changed throughout, a concurrent checkout into the same folder waits for this one
+            List<String> messages = repositoryLocks.write(new File(destinationFolder),
+                    () -> checkout(git, workingDir, gitConfig, customDataBag, revision, sharedCache, startMillis));
             Map<String, Object> response = new HashMap<>();
             response.put("status", "success");
-            response.put("messages", singletonList(String.format("Checked out to revision %s", revision)));
+            response.put("messages", messages);
 
             return renderJSON(SUCCESS_RESPONSE_CODE, response);
         } catch (Throwable t) {
@@ -442,20 +558,153 @@ public class GitHubPRBuildPlugin implements GoPlugin {
         }
     }
 
+    private List<String> checkout(ExtendedGitCmdHelper git, File workingDir, GitConfig gitConfig,
+            Map<String, String> customDataBag, String revision, boolean sharedCache, long startMillis) {
+        String previousRevision = git.reusableCheckoutRevision();
+        String fetched;
+        if (previousRevision != null && !sharedCache && git.hasRevision(revision)) {
+            fetched = String.format("Revision %s was already present, nothing fetched", revision);
+        } else if (sharedCache) {
+            fetched = sharedObjectCache.withLock(gitConfig.getUrl(), () -> {
+                File cache = sharedObjectCache.update(gitConfig, provider.getRefSpec());
+                git.borrowObjectsFrom(cache, sharedObjectCache.idOf(cache));
+                sharedObjectCache.lendTo(cache, workingDir);
+                return fetchForCheckout(git, gitConfig, customDataBag, revision) + " using the shared object cache";
+            });
+            sharedObjectCache.evictBeyondLimit();
+        } else {
+            fetched = fetchForCheckout(git, gitConfig, customDataBag, revision);
+        }
+
+        String branch = customDataBag.getOrDefault("PR_CHECKOUT_BRANCH", "gocd-pr");
+        git.enableFastIndexUpdates();
+        git.applySparseCheckout(MaterialContext.sparseCheckoutPathsOf(gitConfig));
+        String workspace;
+        if (previousRevision != null) {
+            git.switchTo(branch, revision);
+            git.updateSparseWorkingTree();
+            PluginMetrics.shared().increment("checkout.workspace-reused");
+            if (git.submodulesChanged(previousRevision, revision)) {
+                String submodules = updateSubmodules(git, sharedCache);
+                git.markSubmodulesUpdatedAt(revision);
+                workspace = String.format("Updated workspace from %s, %s", previousRevision, submodules);
+            } else {
+                workspace = String.format("Updated workspace from %s, submodules unchanged", previousRevision);
+            }
+        } else {
+            git.checkoutNewBranch(branch);
+            git.resetHard(revision);
+            git.updateSparseWorkingTree();
+            String submodules = updateSubmodules(git, sharedCache);
+            git.markSubmodulesUpdatedAt(revision);
+            workspace = "Checked out a new workspace, " + submodules;
+        }
+
+        long checkoutMillis = System.currentTimeMillis() - startMillis;
+        PluginMetrics.shared().add("checkout.millis", checkoutMillis);
+        return Arrays.asList(String.format("Checked out to revision %s", revision), workspace,
+                String.format("%s, checkout took %dms", fetched, checkoutMillis));
+    }
+
+    private String updateSubmodules(ExtendedGitCmdHelper git, boolean sharedCache) {
+        long startMillis = System.currentTimeMillis();
+        Map<String, Long> millisByPath = git.updateSubmodules(Integer.getInteger(SUBMODULE_JOBS_PROPERTY, 4),
+                sharedCache ? sharedObjectCache : null);
+        if (millisByPath.isEmpty()) {
+            return "no submodules checked out";
+        }
+        long submoduleMillis = System.currentTimeMillis() - startMillis;
+        PluginMetrics.shared().add("checkout.submodules.millis", submoduleMillis);
+        // submodules are updated in parallel, so each is reported with when it was done rather than its own duration
+        return String.format("%d submodules updated in %dms (%s)", millisByPath.size(), submoduleMillis,
+                millisByPath.entrySet().stream()
+                        .map(entry -> String.format("%s done at +%dms", entry.getKey(), entry.getValue()))
+                        .collect(joining(", ")));
+    }
+
+    private String fetchForCheckout(ExtendedGitCmdHelper git, GitConfig gitConfig, Map<String, String> customDataBag,
+            String revision) {
+        if (revisionBundles.isEnabled() && !git.hasRevision(revision)
+                && revisionBundles.seed(git, gitConfig.getUrl(), revision)) {
+            return String.format("Seeded %s from its bundle, nothing fetched from the Git host", revision);
+        }
+        return System.getProperty(TARGETED_CHECKOUT_FETCH_PROPERTY, "N").equals("Y")
+                ? fetchRevision(git, customDataBag, revision)
+                : fetchAll(git);
+    }
+
+    private String fetchAll(ExtendedGitCmdHelper git) {
+        long sizeBefore = git.objectStoreSize();
+        git.cloneOrFetch(provider.getRefSpec());
+        return describeFetch("Fetched all refs", git.objectStoreSize() - sizeBefore);
+    }
+
+    /**
+     * Fetch just what is needed to check out the revision: nothing when the commit is already there, otherwise the
+     * ref of its PR or the SHA itself, and all refs only when neither of those brought the commit in.
+     */
+    private String fetchRevision(ExtendedGitCmdHelper git, Map<String, String> customDataBag, String revision) {
+        if (git.hasRevision(revision)) {
+            PluginMetrics.shared().increment("checkout.fetch.skipped");
+            return String.format("Revision %s was already present, nothing fetched", revision);
+        }
+        if (!git.isRepositoryPresent()) {
+            git.initRepository();
+        }
+        int depth = Integer.getInteger(CHECKOUT_FETCH_DEPTH_PROPERTY, 0);
+        long sizeBefore = git.objectStoreSize();
+        String prId = customDataBag.get("PR_ID");
+        if (prId != null && provider instanceof ApiChangeDetector) {
+            String refSpec = ((ApiChangeDetector) provider).getRefSpec(prId);
+            if (git.fetchOnly(refSpec, depth) && git.hasRevision(revision)) {
+                PluginMetrics.shared().increment("checkout.fetch.pr-ref");
+                return describeFetch(String.format("Fetched only %s", refSpec), git.objectStoreSize() - sizeBefore);
+            }
+        }
+        if (git.fetchOnly(revision, depth) && git.hasRevision(revision)) {
+            PluginMetrics.shared().increment("checkout.fetch.revision");
+            return describeFetch(String.format("Fetched only %s", revision), git.objectStoreSize() - sizeBefore);
+        }
+        LOGGER.info(String.format("Could not fetch %s on its own, fetching all refs", revision));
+        PluginMetrics.shared().increment("checkout.fetch.all");
+        git.cloneOrFetch(provider.getRefSpec());
+        return describeFetch("Fetched all refs", git.objectStoreSize() - sizeBefore);
+    }
+
+    private String describeFetch(String fetched, long bytes) {
+        PluginMetrics.shared().add("checkout.fetch.bytes", Math.max(bytes, 0));
+        return String.format("%s, %d KiB added to the repository", fetched, Math.max(bytes, 0) / 1024);
+    }
+
     GitConfig getGitConfig(Map<String, String> configuration) {
-        GitConfig gitConfig = new GitConfig(
+        GitConfig gitConfig = new MaterialContext(
                 configuration.get("url"),
                 configuration.get("username"),
                 configuration.get("password"),
                 StringUtils.trimToNull(configuration.get("defaultBranch")),
                 true,
-                Boolean.parseBoolean(configuration.get("shallowClone")));
-        provider.setApiUrl(configuration.get("apiUrl"));
+                Boolean.parseBoolean(configuration.get("shallowClone")),
+                configuration.get("apiUrl"),
+                configuration.get("projectName"),
+                StringUtils.trimToNull(configuration.get(CLONE_FILTER_PROPERTY_NAME)),
+                sparseCheckoutPaths(configuration.get(SPARSE_PATHS_PROPERTY_NAME)));
         provider.addConfigData(gitConfig);
-        provider.setProjectName(configuration.get("projectName"));
         return gitConfig;
     }
 
+    static List<String> sparseCheckoutPaths(String value) {
+        List<String> paths = new ArrayList<>();
+        if (value != null) {
+            for (String path : value.split(",")) {
+                path = StringUtils.strip(path.trim(), "/");
+                if (!path.isEmpty()) {
+                    paths.add(path);
+                }
+            }
+        }
+        return paths;
+    }
+
     private void validate(List<Map<String, Object>> response, FieldValidator fieldValidator) {
         Map<String, Object> fieldValidation = new HashMap<>();
         fieldValidator.validate(fieldValidation);
@@ -464,30 +713,25 @@ public class GitHubPRBuildPlugin implements GoPlugin {
         }
     }
 
-    Map<String, Object> populateRevisionMap(GitConfig gitConfig, String branch, Revision revision) {
-        Map<String, Object> response = new HashMap<>();
-        response.put("revision", revision.getRevision());
-        response.put("user", revision.getUser());
-        response.put("timestamp", new SimpleDateFormat(DATE_PATTERN).format(revision.getTimestamp()));
-        response.put("revisionComment", revision.getComment());
-        List<Map<String, String>> modifiedFilesMapList = new ArrayList<>();
-        List<ModifiedFile> modifiedFiles = revision.getModifiedFiles();
-        if (!(modifiedFiles == null || modifiedFiles.isEmpty())) {
-            for (ModifiedFile modifiedFile : revision.getModifiedFiles()) {
-                Map<String, String> modifiedFileMap = new HashMap<>();
-                modifiedFileMap.put("fileName", modifiedFile.getFileName());
-                modifiedFileMap.put("action", modifiedFile.getAction());
-                modifiedFilesMapList.add(modifiedFileMap);
-            }
-        }
-        response.put("modifiedFiles", modifiedFilesMapList);
-        Map<String, String> customDataBag = new HashMap<>();
-        provider.populateRevisionData(gitConfig, branch, revision.getRevision(), customDataBag);
+    RevisionMessage populateRevisionMap(GitConfig gitConfig, String branch, Revision revision) {
+        return populateRevisionMap(gitConfig, branch, revision, enricher.startPoll());
+    }
+
+    RevisionMessage populateRevisionMap(GitConfig gitConfig, String branch, Revision revision,
+            RevisionDataEnricher.Poll enrichment) {
+        return populateRevisionMap(gitConfig, branch, revision.getRevision(), revision, enrichment);
+    }
+
+    /**
+     * The data bag describes the PR as of the given head, commits listed up to that head share its enrichment.
+     */
+    private RevisionMessage populateRevisionMap(GitConfig gitConfig, String branch, String headSHA, Revision revision,
+            RevisionDataEnricher.Poll enrichment) {
+        Map<String, String> customDataBag = enrichment.enrich(provider, gitConfig, branch, headSHA);
 
         customDataBag.put("PR_CHECKOUT_BRANCH", determineCheckoutBranch(customDataBag));
 
-        response.put("data", customDataBag);
-        return response;
+        return new RevisionMessage(revision, customDataBag);
     }
 
     private String determineCheckoutBranch(Map<String, String> customDataBag) {
@@ -506,17 +750,6 @@ public class GitHubPRBuildPlugin implements GoPlugin {
         return checkoutBranch.replace(':', '/');
     }
 
-    static Map<String, String> keyValuePairs(Map<String, Object> requestBodyMap, String mainKey) {
-        Map<String, String> keyValuePairs = new HashMap<>();
-        Map<String, Object> fieldsMap = (Map<String, Object>) requestBodyMap.get(mainKey);
-        for (String key : fieldsMap.keySet()) {
-            Map<String, Object> fieldProperties = (Map<String, Object>) fieldsMap.get(key);
-            String value = (String) fieldProperties.get("value");
-            keyValuePairs.put(key, value);
-        }
-        return keyValuePairs;
-    }
-
     public void validateUrl(GitConfig gitConfig, Map<String, Object> fieldMap) {
         if (StringUtil.isEmpty(gitConfig.getUrl())) {
             fieldMap.put("key", "url");
@@ -527,6 +760,14 @@ public class GitHubPRBuildPlugin implements GoPlugin {
         }
     }
 
+    public void validateCloneFilter(GitConfig gitConfig, Map<String, Object> fieldMap) {
+        String cloneFilter = MaterialContext.cloneFilterOf(gitConfig);
+        if (cloneFilter != null && !cloneFilter.matches("blob:none|tree:0|blob:limit=\\d+[kmg]?")) {
+            fieldMap.put("key", CLONE_FILTER_PROPERTY_NAME);
+            fieldMap.put("message", "Partial clone filter must be blob:none, tree:0 or blob:limit=<size>");
+        }
+    }
+
     public void checkConnection(GitConfig gitConfig, Map<String, Object> response, List<String> messages) {
         LOGGER.info("checkConnection()");
         if (StringUtil.isEmpty(gitConfig.getUrl())) {
@@ -547,10 +788,6 @@ public class GitHubPRBuildPlugin implements GoPlugin {
         }
     }
 
-    private String getFileContents(String filePath) throws IOException {
-        return IOUtils.toString(getClass().getResourceAsStream(filePath), StandardCharsets.UTF_8);
-    }
-
     GoPluginApiResponse renderJSON(final int responseCode, Object response) {
         final String json = response == null ? null : JSONUtils.toJSON(response);
         return new GoPluginApiResponse() {
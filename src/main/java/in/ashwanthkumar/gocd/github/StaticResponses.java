@@ -0,0 +1,108 @@
+package in.ashwanthkumar.gocd.github;
+
+import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
+import in.ashwanthkumar.gocd.github.provider.Provider;
+import in.ashwanthkumar.gocd.github.settings.scm.PluginConfigurationView;
+import in.ashwanthkumar.gocd.github.util.JSONUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static in.ashwanthkumar.gocd.github.GitHubPRBuildPlugin.INTERNAL_ERROR_RESPONSE_CODE;
+import static in.ashwanthkumar.gocd.github.GitHubPRBuildPlugin.NOT_FOUND_RESPONSE_CODE;
+import static in.ashwanthkumar.gocd.github.GitHubPRBuildPlugin.SUCCESS_RESPONSE_CODE;
+
+/**
+ * Responses of the endpoints that only depend on the provider: the SCM and plugin settings configurations and views.
+ * Rendered once per provider, so serving them neither rebuilds the field maps nor reads the templates again.
+ */
+class StaticResponses {
+    private final Provider provider;
+    private final GoPluginApiResponse scmConfiguration;
+    private final GoPluginApiResponse scmView;
+    private final GoPluginApiResponse pluginConfiguration;
+    private final GoPluginApiResponse pluginView;
+
+    private StaticResponses(Provider provider) {
+        this.provider = provider;
+        this.scmConfiguration = configurationOf(provider.getScmConfigurationView());
+        this.scmView = viewOf(provider, provider.getScmConfigurationView());
+        this.pluginConfiguration = configurationOf(provider.getGeneralConfigurationView());
+        this.pluginView = viewOf(provider, provider.getGeneralConfigurationView());
+    }
+
+    static StaticResponses render(Provider provider) {
+        return new StaticResponses(provider);
+    }
+
+    boolean isFor(Provider provider) {
+        return this.provider == provider;
+    }
+
+    GoPluginApiResponse scmConfiguration() {
+        return scmConfiguration;
+    }
+
+    GoPluginApiResponse scmView() {
+        return scmView;
+    }
+
+    GoPluginApiResponse pluginConfiguration() {
+        return pluginConfiguration;
+    }
+
+    GoPluginApiResponse pluginView() {
+        return pluginView;
+    }
+
+    private static GoPluginApiResponse configurationOf(PluginConfigurationView view) {
+        return new RenderedResponse(SUCCESS_RESPONSE_CODE, JSONUtils.toJSON(view.fields()));
+    }
+
+    private static GoPluginApiResponse viewOf(Provider provider, PluginConfigurationView view) {
+        if (!view.hasConfigurationView()) {
+            return new RenderedResponse(NOT_FOUND_RESPONSE_CODE, null);
+        }
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("displayValue", provider.getName());
+            response.put("template", getFileContents(view.templateName()));
+            return new RenderedResponse(SUCCESS_RESPONSE_CODE, JSONUtils.toJSON(response));
+        } catch (IOException e) {
+            String message = "Failed to find template: " + e.getMessage();
+            return new RenderedResponse(INTERNAL_ERROR_RESPONSE_CODE, JSONUtils.toJSON(message));
+        }
+    }
+
+    private static String getFileContents(String filePath) throws IOException {
+        return IOUtils.toString(StaticResponses.class.getResourceAsStream(filePath), StandardCharsets.UTF_8);
+    }
+
+    private static class RenderedResponse extends GoPluginApiResponse {
+        private final int responseCode;
+        private final String responseBody;
+
+        RenderedResponse(int responseCode, String responseBody) {
+            this.responseCode = responseCode;
+            this.responseBody = responseBody;
+        }
+
+        @Override
+        public int responseCode() {
+            return responseCode;
+        }
+
+        @Override
+        public Map<String, String> responseHeaders() {
+            return null;
+        }
+
+        @Override
+        public String responseBody() {
+            return responseBody;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package in.ashwanthkumar.gocd.github.model;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response to latest-revision (a single revision) and latest-revisions-since (a list of revisions). Either may be
+ * absent when there is nothing new to build; the scm-data is always returned.
+ */
+public class LatestRevisionResponse {
+    private final RevisionMessage revision;
+    private final List<RevisionMessage> revisions;
+
+    @SerializedName("scm-data")
+    private final Map<String, String> scmData;
+
+    private LatestRevisionResponse(RevisionMessage revision, List<RevisionMessage> revisions, Map<String, String> scmData) {
+        this.revision = revision;
+        this.revisions = revisions;
+        this.scmData = scmData;
+    }
+
+    public static LatestRevisionResponse ofRevision(RevisionMessage revision, Map<String, String> scmData) {
+        return new LatestRevisionResponse(revision, null, scmData);
+    }
+
+    public static LatestRevisionResponse ofRevisions(List<RevisionMessage> revisions, Map<String, String> scmData) {
+        return new LatestRevisionResponse(null, revisions, scmData);
+    }
+
+    public RevisionMessage getRevision() {
+        return revision;
+    }
+
+    public List<RevisionMessage> getRevisions() {
+        return revisions;
+    }
+
+    public Map<String, String> getScmData() {
+        return scmData;
+    }
+}
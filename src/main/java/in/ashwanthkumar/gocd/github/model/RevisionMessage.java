@@ -0,0 +1,171 @@
+package in.ashwanthkumar.gocd.github.model;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.tw.go.plugin.model.ModifiedFile;
+import com.tw.go.plugin.model.Revision;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A revision as reported to GoCD in latest-revision and latest-revisions-since responses: the git revision with its
+ * modified files and the data bag of the PR. Written field by field straight from the {@link Revision}, without
+ * copying it into maps first.
+ */
+@JsonAdapter(RevisionMessage.Adapter.class)
+public class RevisionMessage {
+    // GoCD parses the timestamp with this pattern in the default time zone of the server JVM the plugin runs in, which
+    // is resolved every time, as it can change while the server runs
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+
+    private final Revision revision;
+    private final Map<String, String> data;
+
+    public RevisionMessage(Revision revision, Map<String, String> data) {
+        this.revision = revision;
+        this.data = data;
+    }
+
+    public String getRevision() {
+        return revision.getRevision();
+    }
+
+    public String getTimestamp() {
+        return revision.getTimestamp() == null ? null
+                : TIMESTAMP_FORMAT.withZone(ZoneId.systemDefault()).format(revision.getTimestamp().toInstant());
+    }
+
+    public Map<String, String> getData() {
+        return data;
+    }
+
+    private static Date parseTimestamp(String timestamp) {
+        return timestamp == null ? null
+                : Date.from(Instant.from(TIMESTAMP_FORMAT.withZone(ZoneId.systemDefault()).parse(timestamp)));
+    }
+
+    static class Adapter extends TypeAdapter<RevisionMessage> {
+        @Override
+        public void write(JsonWriter out, RevisionMessage message) throws IOException {
+            if (message == null) {
+                out.nullValue();
+                return;
+            }
+            Revision revision = message.revision;
+            out.beginObject();
+            out.name("revision").value(revision.getRevision());
+            out.name("user").value(revision.getUser());
+            out.name("timestamp").value(message.getTimestamp());
+            out.name("revisionComment").value(revision.getComment());
+            out.name("modifiedFiles").beginArray();
+            List<ModifiedFile> modifiedFiles = revision.getModifiedFiles();
+            if (modifiedFiles != null) {
+                for (ModifiedFile modifiedFile : modifiedFiles) {
+                    out.beginObject();
+                    out.name("fileName").value(modifiedFile.getFileName());
+                    out.name("action").value(modifiedFile.getAction());
+                    out.endObject();
+                }
+            }
+            out.endArray();
+            out.name("data").beginObject();
+            for (Map.Entry<String, String> entry : message.data.entrySet()) {
+                out.name(entry.getKey()).value(entry.getValue());
+            }
+            out.endObject();
+            out.endObject();
+        }
+
+        /**
+         * Reads revisions as written; the e-mail address of the author is not part of them.
+         */
+        @Override
+        public RevisionMessage read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String revision = null;
+            String user = null;
+            String timestamp = null;
+            String comment = null;
+            List<ModifiedFile> modifiedFiles = new ArrayList<>();
+            Map<String, String> data = new HashMap<>();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "revision":
+                        revision = nextStringOrNull(in);
+                        break;
+                    case "user":
+                        user = nextStringOrNull(in);
+                        break;
+                    case "timestamp":
+                        timestamp = nextStringOrNull(in);
+                        break;
+                    case "revisionComment":
+                        comment = nextStringOrNull(in);
+                        break;
+                    case "modifiedFiles":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            modifiedFiles.add(readModifiedFile(in));
+                        }
+                        in.endArray();
+                        break;
+                    case "data":
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            data.put(in.nextName(), nextStringOrNull(in));
+                        }
+                        in.endObject();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new RevisionMessage(new Revision(revision, parseTimestamp(timestamp), comment, user, null, modifiedFiles),
+                    data);
+        }
+
+        private ModifiedFile readModifiedFile(JsonReader in) throws IOException {
+            String fileName = null;
+            String action = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "fileName":
+                        fileName = nextStringOrNull(in);
+                        break;
+                    case "action":
+                        action = nextStringOrNull(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new ModifiedFile(fileName, action);
+        }
+
+        private String nextStringOrNull(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return in.nextString();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package in.ashwanthkumar.gocd.github.model;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import in.ashwanthkumar.gocd.github.util.JSONUtils;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Body of the SCM requests GoCD sends to the plugin. Each request only fills in the fields it needs.
+ * Read in a single streaming pass: fields the plugin does not use are skipped without being materialized.
+ * scm-data values are kept as the strings GoCD stores; those the plugin reads as JSON objects (like the branch to
+ * revision map) are decoded into string maps when they are first asked for.
+ */
+@JsonAdapter(ScmRequest.Adapter.class)
+public class ScmRequest {
+    private static final TypeAdapter<ScmRequest> ADAPTER = new Adapter();
+
+    private final Map<String, String> scmConfiguration = new HashMap<>();
+    private final Map<String, String> scmData = new HashMap<>();
+    private final Map<String, Map<String, String>> decodedScmData = new HashMap<>();
+    private String flyweightFolder;
+    private String destinationFolder;
+    private CheckoutRevision revision;
+
+    public static ScmRequest fromJSON(String json) {
+        return JSONUtils.fromJSON(json, ADAPTER);
+    }
+
+    /**
+     * Values of the material's configuration by key.
+     */
+    public Map<String, String> getScmConfiguration() {
+        return scmConfiguration;
+    }
+
+    /**
+     * The scm-data values as stored by GoCD.
+     */
+    public Map<String, String> getScmData() {
+        return scmData;
+    }
+
+    /**
+     * The JSON object stored as scm-data under the given key, decoded into a string map; null when there is none or
+     * the value is not a JSON object.
+     *
+     * @throws JsonSyntaxException when the value is malformed
+     */
+    public Map<String, String> getScmDataMap(String key) {
+        String value = scmData.get(key);
+        if (value == null || !value.trim().startsWith("{")) {
+            return null;
+        }
+        return decodedScmData.computeIfAbsent(key, k -> {
+            try {
+                return readStringMap(new JsonReader(new StringReader(value)));
+            } catch (IOException | IllegalStateException e) {
+                throw new JsonSyntaxException(String.format("Malformed scm-data %s", key), e);
+            }
+        });
+    }
+
+    public boolean hasScmData(String key) {
+        return scmData.containsKey(key);
+    }
+
+    public String getFlyweightFolder() {
+        return flyweightFolder;
+    }
+
+    public String getDestinationFolder() {
+        return destinationFolder;
+    }
+
+    public CheckoutRevision getRevision() {
+        return revision;
+    }
+
+    /**
+     * The revision a checkout request asks for, with the data bag it was reported with.
+     */
+    public static class CheckoutRevision {
+        private String revision;
+        private Map<String, String> data = Collections.emptyMap();
+
+        public String getRevision() {
+            return revision;
+        }
+
+        public Map<String, String> getData() {
+            return data;
+        }
+    }
+
+    private static Map<String, String> readStringMap(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return Collections.emptyMap();
+        }
+        Map<String, String> map = new HashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            map.put(in.nextName(), nextStringOrNull(in));
+        }
+        in.endObject();
+        return map;
+    }
+
+    private static String nextStringOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    /**
+     * Writes requests in the format GoCD sends them, which is what tests and stand-ins of GoCD need.
+     */
+    static class Adapter extends TypeAdapter<ScmRequest> {
+        @Override
+        public void write(JsonWriter out, ScmRequest request) throws IOException {
+            if (request == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("scm-configuration").beginObject();
+            for (Map.Entry<String, String> entry : request.scmConfiguration.entrySet()) {
+                out.name(entry.getKey()).beginObject().name("value").value(entry.getValue()).endObject();
+            }
+            out.endObject();
+            out.name("scm-data");
+            writeStringMap(out, request.scmData);
+            if (request.flyweightFolder != null) {
+                out.name("flyweight-folder").value(request.flyweightFolder);
+            }
+            if (request.destinationFolder != null) {
+                out.name("destination-folder").value(request.destinationFolder);
+            }
+            if (request.revision != null) {
+                out.name("revision").beginObject();
+                out.name("revision").value(request.revision.revision);
+                out.name("data");
+                writeStringMap(out, request.revision.data);
+                out.endObject();
+            }
+            out.endObject();
+        }
+
+        private void writeStringMap(JsonWriter out, Map<String, String> map) throws IOException {
+            out.beginObject();
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                out.name(entry.getKey()).value(entry.getValue());
+            }
+            out.endObject();
+        }
+
+        @Override
+        public ScmRequest read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            ScmRequest request = new ScmRequest();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "scm-configuration":
+                        readConfiguration(in, request.scmConfiguration);
+                        break;
+                    case "scm-data":
+                        readScmData(in, request);
+                        break;
+                    case "flyweight-folder":
+                        request.flyweightFolder = nextStringOrNull(in);
+                        break;
+                    case "destination-folder":
+                        request.destinationFolder = nextStringOrNull(in);
+                        break;
+                    case "revision":
+                        request.revision = readRevision(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return request;
+        }
+
+        private void readConfiguration(JsonReader in, Map<String, String> configuration) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                String key = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    configuration.put(key, null);
+                    continue;
+                }
+                String value = null;
+                in.beginObject();
+                while (in.hasNext()) {
+                    if ("value".equals(in.nextName())) {
+                        value = nextStringOrNull(in);
+                    } else {
+                        in.skipValue();
+                    }
+                }
+                in.endObject();
+                configuration.put(key, value);
+            }
+            in.endObject();
+        }
+
+        private void readScmData(JsonReader in, ScmRequest request) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                request.scmData.put(in.nextName(), nextStringOrNull(in));
+            }
+            in.endObject();
+        }
+
+        private CheckoutRevision readRevision(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            CheckoutRevision revision = new CheckoutRevision();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "revision":
+                        revision.revision = nextStringOrNull(in);
+                        break;
+                    case "data":
+                        revision.data = readStringMap(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return revision;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package in.ashwanthkumar.gocd.github.provider;
+
+import com.tw.go.plugin.model.GitConfig;
+
+/**
+ * Implemented by providers that can tell which PRs changed through their API, so that a poll does not have to
+ * fetch every PR ref to find out. The plugin keeps the cursor and the known PR heads in scm-data and only fetches
+ * the ref of a PR once its head has moved.
+ */
+public interface ApiChangeDetector {
+
+    public boolean isApiChangeDetectionEnabled();
+
+    /**
+     * List the heads of the PRs updated since the given cursor, or of all open PRs when the cursor is null.
+     * Returns null when the API can not be used right now, in which case the plugin falls back to git.
+     */
+    public PullRequestHeads listHeadsSince(GitConfig gitConfig, String cursor);
+
+    /**
+     * Refspec that fetches only the given PR, the narrow counterpart of {@link Provider#getRefSpec()}.
+     */
+    public String getRefSpec(String branch);
+}
@@ -0,0 +1,80 @@
+package in.ashwanthkumar.gocd.github.provider;
+
+import in.ashwanthkumar.gocd.github.util.ExpiringCache;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author name and email by (provider endpoint, login), shared by all materials, so that PR enrichment
+ * does not have to resolve the same handful of authors over and over again. Only GitHub needs it: its pull requests
+ * carry the login of the author alone, name and email take a /users/{login} call. GitLab and Bitbucket send the
+ * name and email with the pull request and use them as they are.
+ */
+public class AuthorProfileCache {
+    public static final String TTL_PROPERTY = "go.plugin.author-cache.ttl-minutes";
+    public static final String MAX_SIZE_PROPERTY = "go.plugin.author-cache.max-size";
+
+    private static final AuthorProfileCache INSTANCE = new AuthorProfileCache(
+            Integer.getInteger(MAX_SIZE_PROPERTY, 5000),
+            TimeUnit.MINUTES.toMillis(Long.getLong(TTL_PROPERTY, 60L)));
+
+    private final ExpiringCache<Key, AuthorProfile> profiles;
+
+    AuthorProfileCache(int maxSize, long ttlMillis) {
+        this.profiles = new ExpiringCache<>("author-profile", maxSize, ttlMillis);
+    }
+
+    public static AuthorProfileCache shared() {
+        return INSTANCE;
+    }
+
+    public AuthorProfile get(String provider, String login) {
+        return profiles.get(new Key(provider, login));
+    }
+
+    public void put(String provider, String login, AuthorProfile profile) {
+        profiles.put(new Key(provider, login), profile);
+    }
+
+    public static class AuthorProfile {
+        private final String name;
+        private final String email;
+
+        public AuthorProfile(String name, String email) {
+            this.name = name;
+            this.email = email;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+    }
+
+    private static class Key {
+        private final String provider;
+        private final String login;
+
+        private Key(String provider, String login) {
+            this.provider = provider;
+            this.login = login;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(provider, key.provider) && Objects.equals(login, key.login);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(provider, login);
+        }
+    }
+}
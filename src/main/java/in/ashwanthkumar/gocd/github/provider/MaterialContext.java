@@ -0,0 +1,73 @@
+package in.ashwanthkumar.gocd.github.provider;
+
+import com.tw.go.plugin.model.GitConfig;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link GitConfig} of a single plugin request together with the provider specific settings of the material.
+ * Built once per request and handed to the provider with every call, so the provider itself holds no per-material
+ * state and requests for different materials can be handled concurrently.
+ */
+public class MaterialContext extends GitConfig {
+    private final String apiUrl;
+    private final String projectName;
+    private final String cloneFilter;
+    private final List<String> sparseCheckoutPaths;
+
+    public MaterialContext(String url, String username, String password, String branch, boolean recursiveSubModuleUpdate,
+            boolean shallowClone, String apiUrl, String projectName, String cloneFilter,
+            List<String> sparseCheckoutPaths) {
+        super(url, username, password, branch, recursiveSubModuleUpdate, shallowClone);
+        this.apiUrl = apiUrl;
+        this.projectName = projectName;
+        this.cloneFilter = cloneFilter;
+        this.sparseCheckoutPaths = Collections.unmodifiableList(sparseCheckoutPaths);
+    }
+
+    public String getApiUrl() {
+        return apiUrl;
+    }
+
+    public String getProjectName() {
+        return projectName;
+    }
+
+    public String getCloneFilter() {
+        return cloneFilter;
+    }
+
+    public List<String> getSparseCheckoutPaths() {
+        return sparseCheckoutPaths;
+    }
+
+    /**
+     * API URL configured on the material the given config belongs to, null when there is none.
+     */
+    public static String apiUrlOf(GitConfig gitConfig) {
+        return gitConfig instanceof MaterialContext ? ((MaterialContext) gitConfig).getApiUrl() : null;
+    }
+
+    /**
+     * Project name configured on the material the given config belongs to, null when there is none.
+     */
+    public static String projectNameOf(GitConfig gitConfig) {
+        return gitConfig instanceof MaterialContext ? ((MaterialContext) gitConfig).getProjectName() : null;
+    }
+
+    /**
+     * Partial clone filter (like blob:none) configured on the material, null when it wants all objects.
+     */
+    public static String cloneFilterOf(GitConfig gitConfig) {
+        return gitConfig instanceof MaterialContext ? ((MaterialContext) gitConfig).getCloneFilter() : null;
+    }
+
+    /**
+     * Directories the material checks out, empty when it checks out the whole tree.
+     */
+    public static List<String> sparseCheckoutPathsOf(GitConfig gitConfig) {
+        return gitConfig instanceof MaterialContext ? ((MaterialContext) gitConfig).getSparseCheckoutPaths()
+                : Collections.emptyList();
+    }
+}
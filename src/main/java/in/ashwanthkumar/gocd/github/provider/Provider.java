@@ -22,9 +22,13 @@ public interface Provider {
 
     public String getRefPattern();
 
-    public void setApiUrl(String url);
-
-    public void setProjectName(String name);
+    /**
+     * Drop refs that are superseded by others in the same map before they are compared, e.g. older patchsets of a
+     * Gerrit change. Returns the map unchanged by default.
+     */
+    public default Map<String, String> collapseBranchToRevisionMap(Map<String, String> branchToRevisionMap) {
+        return branchToRevisionMap;
+    }
 
     public void populateRevisionData(GitConfig gitConfig, String prId, String prSHA, Map<String, String> data);
 
@@ -0,0 +1,64 @@
+package in.ashwanthkumar.gocd.github.provider;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Result of an {@link ApiChangeDetector} listing: the head SHA of every open PR that was updated since the cursor,
+ * the PRs that were closed or merged since then, and the cursor to continue from on the next poll.
+ */
+public class PullRequestHeads {
+    private final Map<String, String> updatedHeads = new HashMap<>();
+    private final Set<String> closed = new HashSet<>();
+    private final boolean complete;
+    private String cursor;
+
+    /**
+     * @param complete true if this lists all open PRs rather than only the ones updated since a cursor
+     */
+    public PullRequestHeads(boolean complete, String cursor) {
+        this.complete = complete;
+        this.cursor = cursor;
+    }
+
+    public void open(String prId, String headSHA) {
+        updatedHeads.put(prId, headSHA);
+    }
+
+    public void closed(String prId) {
+        closed.add(prId);
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public Map<String, String> getUpdatedHeads() {
+        return Collections.unmodifiableMap(updatedHeads);
+    }
+
+    public boolean isEmpty() {
+        return updatedHeads.isEmpty() && closed.isEmpty();
+    }
+
+    /**
+     * Heads of all open PRs, given the heads known before this listing.
+     */
+    public Map<String, String> applyTo(Map<String, String> previousHeads) {
+        Map<String, String> heads = complete ? new HashMap<>() : new HashMap<>(previousHeads);
+        heads.keySet().removeAll(closed);
+        heads.putAll(updatedHeads);
+        return heads;
+    }
+}
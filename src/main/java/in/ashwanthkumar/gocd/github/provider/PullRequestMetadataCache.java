@@ -0,0 +1,95 @@
+package in.ashwanthkumar.gocd.github.provider;
+
+import in.ashwanthkumar.gocd.github.util.ExpiringCache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PR metadata (the revision data a provider puts in the data bag) by repository and PR id, together with
+ * the head SHA it was fetched for. Shared by all materials, so every revision of a PR in a poll and every
+ * material on the same repository reuse one API response until the head of the PR moves. Lookups name the head
+ * they need, metadata fetched for any other head is a miss.
+ */
+public class PullRequestMetadataCache {
+    public static final String TTL_PROPERTY = "go.plugin.pr-metadata-cache.ttl-minutes";
+    public static final String MAX_SIZE_PROPERTY = "go.plugin.pr-metadata-cache.max-size";
+
+    private static final PullRequestMetadataCache INSTANCE = new PullRequestMetadataCache(
+            Integer.getInteger(MAX_SIZE_PROPERTY, 10000),
+            TimeUnit.MINUTES.toMillis(Long.getLong(TTL_PROPERTY, 30L)));
+
+    private final ExpiringCache<Key, Entry> entries;
+
+    PullRequestMetadataCache(int maxSize, long ttlMillis) {
+        this.entries = new ExpiringCache<>("pr-metadata", maxSize, ttlMillis);
+    }
+
+    public static PullRequestMetadataCache shared() {
+        return INSTANCE;
+    }
+
+    /**
+     * Metadata of the PR if it was fetched for the given head, null otherwise; metadata of another head is dropped.
+     */
+    public Map<String, String> get(String repository, String prId, String headSHA) {
+        Key key = new Key(repository, prId);
+        Entry entry = entries.peek(key);
+        if (entry != null && !Objects.equals(entry.headSHA, headSHA)) {
+            entries.invalidate(key);
+        }
+        entry = entries.get(key);
+        return entry == null ? null : entry.metadata;
+    }
+
+    public void put(String repository, String prId, String headSHA, Map<String, String> metadata) {
+        entries.put(new Key(repository, prId), new Entry(headSHA, metadata));
+    }
+
+    /**
+     * Drop the cached metadata of the PR unless it was fetched for the given head.
+     */
+    public void retainHead(String repository, String prId, String headSHA) {
+        Key key = new Key(repository, prId);
+        Entry entry = entries.peek(key);
+        if (entry != null && !Objects.equals(entry.headSHA, headSHA)) {
+            entries.invalidate(key);
+        }
+    }
+
+    private static class Entry {
+        private final String headSHA;
+        private final Map<String, String> metadata;
+
+        private Entry(String headSHA, Map<String, String> metadata) {
+            this.headSHA = headSHA;
+            this.metadata = Collections.unmodifiableMap(new HashMap<>(metadata));
+        }
+    }
+
+    private static class Key {
+        private final String repository;
+        private final String prId;
+
+        private Key(String repository, String prId) {
+            this.repository = repository;
+            this.prId = prId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(repository, key.repository) && Objects.equals(prId, key.prId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(repository, prId);
+        }
+    }
+}
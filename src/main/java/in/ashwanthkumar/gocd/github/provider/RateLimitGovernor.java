@@ -0,0 +1,146 @@
+package in.ashwanthkumar.gocd.github.provider;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import in.ashwanthkumar.gocd.github.util.PluginMetrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the API quota reported by each provider endpoint and is shared by all provider clients.
+ * <p/>
+ * Calls are spread evenly over what is left of the current rate limit window, and low priority calls
+ * (like PR enrichment) are deferred once the remaining quota drops below the low water mark, instead
+ * of failing after the quota is exhausted.
+ */
+public class RateLimitGovernor {
+    private static final Logger LOG = Logger.getLoggerFor(RateLimitGovernor.class);
+
+    public static final String LOW_WATER_MARK_PROPERTY = "go.plugin.ratelimit.low-water-mark";
+    public static final String MAX_WAIT_PROPERTY = "go.plugin.ratelimit.max-wait-ms";
+    public static final long DEFAULT_EXHAUSTED_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final RateLimitGovernor INSTANCE = new RateLimitGovernor(
+            Integer.getInteger(LOW_WATER_MARK_PROPERTY, 100),
+            Long.getLong(MAX_WAIT_PROPERTY, 2000L));
+
+    public enum Priority {
+        HIGH,
+        LOW
+    }
+
+    private final int lowWaterMark;
+    private final long maxWaitMillis;
+    private final ConcurrentMap<String, Budget> budgets = new ConcurrentHashMap<>();
+
+    RateLimitGovernor(int lowWaterMark, long maxWaitMillis) {
+        this.lowWaterMark = lowWaterMark;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public static RateLimitGovernor shared() {
+        return INSTANCE;
+    }
+
+    /**
+     * Record the quota reported by the remaining-quota and reset headers of the last response from the API.
+     */
+    public void update(String api, int remaining, int limit, long resetAtMillis) {
+        Budget budget = budgets.computeIfAbsent(api, key -> new Budget());
+        synchronized (budget) {
+            budget.remaining = remaining;
+            budget.limit = limit;
+            budget.resetAtMillis = resetAtMillis;
+        }
+        PluginMetrics.shared().gauge(gaugeName(api), remaining);
+    }
+
+    /**
+     * Record that the API refused a call because the quota was exhausted.
+     */
+    public void exhausted(String api, long resetAtMillis) {
+        Budget budget = budgets.computeIfAbsent(api, key -> new Budget());
+        synchronized (budget) {
+            budget.remaining = 0;
+            budget.resetAtMillis = Math.max(resetAtMillis, System.currentTimeMillis());
+        }
+        PluginMetrics.shared().gauge(gaugeName(api), 0);
+        PluginMetrics.shared().increment("ratelimit." + api + ".exhausted");
+    }
+
+    /**
+     * Ask for permission to call the given API. Returns false when a low priority call should be deferred,
+     * otherwise waits for the next free slot within the remaining budget (bounded by the max wait) and returns true.
+     */
+    public boolean acquire(String api, Priority priority) {
+        Budget budget = api == null ? null : budgets.get(api);
+        if (budget == null) {
+            return true;
+        }
+
+        long waitMillis;
+        synchronized (budget) {
+            long now = System.currentTimeMillis();
+            if (budget.resetAtMillis <= now) {
+                // The window has rolled over, the next response tells us the new quota.
+                return true;
+            }
+            if (priority == Priority.LOW && budget.remaining <= lowWaterMark) {
+                LOG.info(String.format("Deferring low priority call to %s, %d of %d calls left until %tT",
+                        api, budget.remaining, budget.limit, budget.resetAtMillis));
+                PluginMetrics.shared().increment("ratelimit." + api + ".deferred");
+                return false;
+            }
+            if (budget.remaining <= 0) {
+                return true;
+            }
+
+            long interval = (budget.resetAtMillis - now) / budget.remaining;
+            long slot = Math.max(now, budget.lastCallAtMillis + interval);
+            waitMillis = Math.min(slot - now, maxWaitMillis);
+            budget.lastCallAtMillis = now + waitMillis;
+            budget.remaining--;
+        }
+
+        if (waitMillis > 0) {
+            try {
+                Thread.sleep(waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return true;
+    }
+
+    public boolean isExhausted(String api) {
+        Budget budget = budgets.get(api);
+        if (budget == null) {
+            return false;
+        }
+        synchronized (budget) {
+            return budget.remaining <= 0 && budget.resetAtMillis > System.currentTimeMillis();
+        }
+    }
+
+    public int remaining(String api) {
+        Budget budget = budgets.get(api);
+        if (budget == null) {
+            return -1;
+        }
+        synchronized (budget) {
+            return budget.remaining;
+        }
+    }
+
+    private static String gaugeName(String api) {
+        return "ratelimit." + api + ".remaining";
+    }
+
+    private static class Budget {
+        private int remaining;
+        private int limit;
+        private long resetAtMillis;
+        private long lastCallAtMillis;
+    }
+}
@@ -0,0 +1,251 @@
+package in.ashwanthkumar.gocd.github.provider;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import com.tw.go.plugin.model.GitConfig;
+import in.ashwanthkumar.gocd.github.util.PluginMetrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs {@link Provider#populateRevisionData} on a bounded pool of background threads, so that a slow provider API
+ * does not hold up the poll. Metadata of changed PRs can be prefetched as soon as the ref diff is known; a poll then
+ * waits for it only until its budget runs out. Work that did not finish in time keeps running; the poll can
+ * {@link Poll#holdBack() hold back} its revision once, so the next poll, which reuses that work, returns it with
+ * complete data. Revisions that were held back before go out with whatever the provider put in the data bag so far,
+ * so a provider that never answers does not stop builds. When the queue is full, the poll fetches the revision data
+ * on its own thread.
+ * Exports {@code enrichment.completed}, {@code enrichment.timed-out}, {@code enrichment.held-back},
+ * {@code enrichment.failed} and {@code enrichment.rejected} counters.
+ */
+public class RevisionDataEnricher {
+    private static final Logger LOG = Logger.getLoggerFor(RevisionDataEnricher.class);
+
+    public static final String THREADS_PROPERTY = "go.plugin.enrichment.threads";
+    public static final String QUEUE_SIZE_PROPERTY = "go.plugin.enrichment.queue-size";
+    public static final String BUDGET_PROPERTY = "go.plugin.enrichment.budget-ms";
+
+    private static final RevisionDataEnricher INSTANCE = new RevisionDataEnricher(
+            Integer.getInteger(THREADS_PROPERTY, 4),
+            Integer.getInteger(QUEUE_SIZE_PROPERTY, 100),
+            Long.getLong(BUDGET_PROPERTY, 5000L));
+
+    // Work nobody asked for again is dropped after a while, e.g. that of a PR head that was superseded
+    private static final long TASK_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final ThreadPoolExecutor executor;
+    private final long budgetMillis;
+    private final ConcurrentMap<Key, Task> tasks = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweepMillis = new AtomicLong();
+
+    RevisionDataEnricher(int threads, int queueSize, long budgetMillis) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "pr-enrichment-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.budgetMillis = budgetMillis;
+    }
+
+    public static RevisionDataEnricher shared() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start enrichment for a poll; its budget starts now.
+     */
+    public Poll startPoll() {
+        return startPoll(budgetMillis);
+    }
+
+    /**
+     * Start enrichment for a poll that has at most the given time left.
+     */
+    public Poll startPoll(long maxBudgetMillis) {
+        return new Poll(System.currentTimeMillis() + Math.min(budgetMillis, maxBudgetMillis));
+    }
+
+    /**
+     * Start fetching the revision data of the given PR heads in the background, if not already running.
+     * Stops once the queue is full; whatever is left is fetched when it is built.
+     */
+    public void prefetch(Provider provider, GitConfig gitConfig, Map<String, String> branchToRevisionMap) {
+        for (Map.Entry<String, String> entry : branchToRevisionMap.entrySet()) {
+            if (executor.getQueue().remainingCapacity() == 0) {
+                break;
+            }
+            submit(provider, gitConfig, entry.getKey(), entry.getValue());
+        }
+    }
+
+    private Task submit(Provider provider, GitConfig gitConfig, String branch, String revision) {
+        dropExpiredTasks();
+        return tasks.computeIfAbsent(new Key(gitConfig.getUrl(), branch, revision), key -> {
+            Task newTask = new Task(System.currentTimeMillis());
+            try {
+                newTask.future = executor.submit(() -> provider.populateRevisionData(gitConfig, branch, revision, newTask.data));
+            } catch (RejectedExecutionException e) {
+                PluginMetrics.shared().increment("enrichment.rejected");
+                LOG.warn(String.format("Enrichment queue is full, not queueing %s of %s", branch, gitConfig.getUrl()));
+                return null;
+            }
+            return newTask;
+        });
+    }
+
+    private void dropExpiredTasks() {
+        long now = System.currentTimeMillis();
+        long lastSweep = lastSweepMillis.get();
+        if (now - lastSweep < TimeUnit.MINUTES.toMillis(1) || !lastSweepMillis.compareAndSet(lastSweep, now)) {
+            return;
+        }
+        tasks.values().removeIf(task -> now - task.createdMillis > TASK_TTL_MILLIS);
+    }
+
+    public class Poll {
+        private final long deadlineMillis;
+        private final List<Task> timedOutTasks = new ArrayList<>();
+        private int completed;
+        private int timedOut;
+
+        private Poll(long deadlineMillis) {
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        /**
+         * Revision data of the given PR head, or as much of it as was ready when the poll's budget ran out.
+         */
+        public Map<String, String> enrich(Provider provider, GitConfig gitConfig, String branch, String revision) {
+            Task task = submit(provider, gitConfig, branch, revision);
+            if (task == null) {
+                return enrichInline(provider, gitConfig, branch, revision);
+            }
+            Key key = new Key(gitConfig.getUrl(), branch, revision);
+            try {
+                task.future.get(Math.max(0, deadlineMillis - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                completed++;
+                PluginMetrics.shared().increment("enrichment.completed");
+                // Don't keep results, the provider decides what to cache. A deferred enrichment is retried next time.
+                tasks.remove(key, task);
+            } catch (TimeoutException e) {
+                timedOut++;
+                timedOutTasks.add(task);
+                PluginMetrics.shared().increment("enrichment.timed-out");
+                LOG.info(String.format("Enrichment of %s of %s ran out of its budget", branch, gitConfig.getUrl()));
+            } catch (ExecutionException e) {
+                PluginMetrics.shared().increment("enrichment.failed");
+                LOG.warn(String.format("Enrichment of %s of %s failed", branch, gitConfig.getUrl()), e.getCause());
+                tasks.remove(key, task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (task.data) {
+                return new HashMap<>(task.data);
+            }
+        }
+
+        /**
+         * Revision data fetched on the polling thread, when the queue is too full to take it. Slower than waiting
+         * for the pool, but a revision never goes out without its data just because other repositories are busy.
+         */
+        private Map<String, String> enrichInline(Provider provider, GitConfig gitConfig, String branch, String revision) {
+            Map<String, String> data = new HashMap<>();
+            try {
+                provider.populateRevisionData(gitConfig, branch, revision, data);
+                completed++;
+                PluginMetrics.shared().increment("enrichment.completed");
+            } catch (RuntimeException e) {
+                PluginMetrics.shared().increment("enrichment.failed");
+                LOG.warn(String.format("Enrichment of %s of %s failed", branch, gitConfig.getUrl()), e);
+            }
+            return data;
+        }
+
+        /**
+         * Whether the revisions of this poll should be held back until the next poll, because some of their
+         * enrichment ran out of budget for the first time. Work that ran out of budget before is not held back again.
+         */
+        public boolean holdBack() {
+            boolean holdBack = false;
+            for (Task task : timedOutTasks) {
+                if (!task.heldBack) {
+                    task.heldBack = true;
+                    holdBack = true;
+                }
+            }
+            if (holdBack) {
+                PluginMetrics.shared().increment("enrichment.held-back");
+            }
+            return holdBack;
+        }
+
+        public int getCompleted() {
+            return completed;
+        }
+
+        public int getTimedOut() {
+            return timedOut;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d completed, %d timed out", completed, timedOut);
+        }
+    }
+
+    private static class Task {
+        // Providers may put null values, which rules out a ConcurrentHashMap
+        private final Map<String, String> data = Collections.synchronizedMap(new HashMap<>());
+        private final long createdMillis;
+        private Future<?> future;
+        private volatile boolean heldBack;
+
+        private Task(long createdMillis) {
+            this.createdMillis = createdMillis;
+        }
+    }
+
+    private static class Key {
+        private final String repository;
+        private final String branch;
+        private final String revision;
+
+        private Key(String repository, String branch, String revision) {
+            this.repository = repository;
+            this.branch = branch;
+            this.revision = revision;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(repository, key.repository) && Objects.equals(branch, key.branch)
+                    && Objects.equals(revision, key.revision);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(repository, branch, revision);
+        }
+    }
+}
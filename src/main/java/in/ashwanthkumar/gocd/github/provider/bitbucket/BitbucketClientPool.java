@@ -0,0 +1,47 @@
+package in.ashwanthkumar.gocd.github.provider.bitbucket;
+
+import com.cdancy.bitbucket.rest.BitbucketClient;
+import in.ashwanthkumar.gocd.github.util.ClientPool;
+import in.ashwanthkumar.gocd.github.util.PollDeadline;
+import org.jclouds.Constants;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * {@link BitbucketClient}s by endpoint and credentials. Building one bootstraps a whole jclouds context (injector,
+ * executors and HTTP stack), so they are kept around instead of being built for every call.
+ */
+public class BitbucketClientPool extends ClientPool<BitbucketClient> {
+    public static final String MAX_SIZE_PROPERTY = "go.plugin.bitbucket.client-pool.max-size";
+    public static final String IDLE_TIMEOUT_PROPERTY = "go.plugin.bitbucket.client-pool.idle-minutes";
+
+    private static final BitbucketClientPool INSTANCE = new BitbucketClientPool(
+            Integer.getInteger(MAX_SIZE_PROPERTY, 16),
+            TimeUnit.MINUTES.toMillis(Long.getLong(IDLE_TIMEOUT_PROPERTY, 10L)),
+            (endpoint, credentials) -> BitbucketClient.builder().endPoint(endpoint).credentials(credentials)
+                    .overrides(timeouts()).build());
+
+    static {
+        INSTANCE.closeOnShutdown();
+    }
+
+    BitbucketClientPool(int maxSize, long idleTimeoutMillis, BiFunction<String, String, BitbucketClient> factory) {
+        super("bitbucket", maxSize, idleTimeoutMillis, factory, BitbucketClient::close);
+    }
+
+    public static BitbucketClientPool shared() {
+        return INSTANCE;
+    }
+
+    /**
+     * A pooled client outlives any single poll, so its calls time out with the budget of a whole poll.
+     */
+    private static Properties timeouts() {
+        Properties overrides = new Properties();
+        overrides.setProperty(Constants.PROPERTY_CONNECTION_TIMEOUT, String.valueOf(PollDeadline.budgetMillis()));
+        overrides.setProperty(Constants.PROPERTY_SO_TIMEOUT, String.valueOf(PollDeadline.budgetMillis()));
+        return overrides;
+    }
+}
@@ -1,11 +1,9 @@
 package in.ashwanthkumar.gocd.github.provider.bitbucket;
 
-import com.cdancy.bitbucket.rest.BitbucketClient;
 import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
-import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequestPage;
-import com.cdancy.bitbucket.rest.features.PullRequestApi;
 import in.ashwanthkumar.gocd.github.provider.Provider;
-import in.ashwanthkumar.gocd.github.provider.bitbucket.model.PullRequestStatus;
+import in.ashwanthkumar.gocd.github.provider.PullRequestMetadataCache;
+import in.ashwanthkumar.gocd.github.provider.github.model.PullRequestStatus;
 import in.ashwanthkumar.gocd.github.settings.general.DefaultGeneralPluginConfigurationView;
 import in.ashwanthkumar.gocd.github.settings.general.GeneralPluginConfigurationView;
 import in.ashwanthkumar.gocd.github.settings.scm.BitbucketScmPluginConfigurationView;
@@ -24,6 +22,9 @@ import java.util.Arrays;
 import java.util.Map;
 import java.util.Properties;
 
+import static in.ashwanthkumar.gocd.github.provider.MaterialContext.apiUrlOf;
+import static in.ashwanthkumar.gocd.github.provider.MaterialContext.projectNameOf;
+
 public class BitbucketProvider implements Provider {
     private static final Logger LOG = Logger.getLoggerFor(BitbucketProvider.class);
     // public static final String PR_FETCH_REFSPEC = "+refs/pull/*/merge:refs/gh-merge/remotes/origin/*";
@@ -31,14 +32,8 @@ public class BitbucketProvider implements Provider {
     public static final String REF_SPEC = "+refs/pull-requests/*/from:refs/remotes/origin/pr/*";
     public static final String REF_PATTERN = "refs/remotes/origin/pr/";
 
-    private String bitbucketUrl;
-    private String projectName;
-
-    public void setApiUrl(String url){
-        this.bitbucketUrl = url;
-    }
-
-    public void setProjectName(String name) { this.projectName = name; }
+    private final PullRequestMetadataCache prMetadataCache = PullRequestMetadataCache.shared();
+    private final BitbucketPullRequestIndex prIndex = BitbucketPullRequestIndex.shared();
 
     @Override
     public GoPluginIdentifier getPluginId() {
@@ -74,11 +69,8 @@ public class BitbucketProvider implements Provider {
     public void checkConnection(GitConfig gitConfig) {
         try {
             LOG.info("checkConnection(): checking connection..");
-            LOG.info("checkConnection(): Bitbucket URL: " + this.bitbucketUrl);
-            BitbucketClient client = BitbucketClient.builder()
-                    .endPoint(this.bitbucketUrl)
-                    .credentials(gitConfig.getUsername() + ":" + gitConfig.getPassword())
-                    .build();
+            LOG.info("checkConnection(): Bitbucket URL: " + apiUrlOf(gitConfig));
+            BitbucketClientPool.shared().acquire(apiUrlOf(gitConfig), credentialsOf(gitConfig)).close();
             LOG.info("checkConnection(): If I am here then I work.");
         } catch (Exception e) {
             LOG.info("checkConnection(): ERROR. I is broke");
@@ -100,47 +92,23 @@ public class BitbucketProvider implements Provider {
     public void populateRevisionData(GitConfig gitConfig, String prId, String prSHA, Map<String, String> data) {
         data.put("PR_ID", prId);
 
-        PullRequestStatus prStatus = null;
-        boolean isDisabled = System.getProperty("go.plugin.bitbucket.pr.populate-details", "Y").equals("N");
-        LOG.debug("Populating PR details is disabled");
-        LOG.info("Fetching newest PR");
-        
-        String auth = String.format("%s:%s", gitConfig.getUsername(), gitConfig.getPassword());
-        byte[] encodedAuth = Base64.encodeBase64(auth.getBytes(Charset.forName("ISO-8859-1")));
-        String authHeader = String.format("%s", new String(encodedAuth));
-
-        BitbucketClient client = BitbucketClient.builder()
-                .endPoint(this.bitbucketUrl)
-                .credentials(authHeader)
-                .build();
-        PullRequestApi api = client.api().pullRequestApi();
-        PullRequestPage page = api.list(this.projectName, parseRepository(gitConfig.getUrl()),
-                        null,
-                        null,
-                        "OPEN",
-                        "NEWEST",
-                        true,
-                        true,
-                        null,
-                        null);
-        if(page.size() > 0){
-            LOG.info("PR FOUND: " + page.values().get(0).title());
-            if (!isDisabled) {
-                prStatus = getPullRequestStatus(gitConfig, page.values().get(0).id(), prSHA);
-            }
+        Map<String, String> cachedMetadata = prMetadataCache.get(gitConfig.getUrl(), prId, prSHA);
+        if (cachedMetadata != null) {
+            data.putAll(cachedMetadata);
+            return;
         }
-        else{
-            LOG.info("No Pull requests found.");
+
+        boolean isDisabled = System.getProperty("go.plugin.bitbucket.pr.populate-details", "Y").equals("N");
+        if (isDisabled) {
+            LOG.debug("Populating PR details is disabled");
+            return;
         }
 
+        PullRequestStatus prStatus = getPullRequestStatus(gitConfig, prId, prSHA);
         if (prStatus != null) {
-            data.put("PR_BRANCH", String.valueOf(prStatus.getPrBranch()));
-            data.put("TARGET_BRANCH", String.valueOf(prStatus.getToBranch()));
-            data.put("PR_URL", String.valueOf(prStatus.getUrl()));
-            data.put("PR_AUTHOR", prStatus.getAuthor());
-            data.put("PR_AUTHOR_EMAIL", prStatus.getAuthorEmail());
-            data.put("PR_DESCRIPTION", prStatus.getDescription());
-            data.put("PR_TITLE", prStatus.getTitle());
+            Map<String, String> metadata = prStatus.metadata();
+            prMetadataCache.put(gitConfig.getUrl(), prId, prSHA, metadata);
+            data.putAll(metadata);
         }
     }
 
@@ -162,10 +130,14 @@ public class BitbucketProvider implements Provider {
         return splitRepo[0];
     }
 
-    private PullRequestStatus getPullRequestStatus(GitConfig gitConfig, int prId, String prSHA) {
+    private PullRequestStatus getPullRequestStatus(GitConfig gitConfig, String prId, String prSHA) {
         try {
-            PullRequest currentPR = pullRequestFrom(gitConfig, prId);
-            return transformBBPullRequestToPullRequestStatus(prSHA).apply(currentPR);
+            PullRequest currentPR = pullRequestFrom(gitConfig, Integer.parseInt(prId));
+            if (currentPR == null) {
+                LOG.info(String.format("PR %s of %s is not open", prId, gitConfig.getUrl()));
+                return null;
+            }
+            return transformBBPullRequestToPullRequestStatus(apiUrlOf(gitConfig), prSHA).apply(currentPR);
         } catch (Exception e) {
             // ignore
             LOG.warn(e.getMessage(), e);
@@ -173,26 +145,27 @@ public class BitbucketProvider implements Provider {
         return null;
     }
 
-    /**
-     * TODO. Get projectName and repository.
-     */
-    private PullRequest pullRequestFrom(GitConfig gitConfig, int currentPullRequestID) throws IOException {
-        return BitbucketClient.builder()
-                .endPoint(this.bitbucketUrl)
-                .credentials(gitConfig.getUsername() + ":" + gitConfig.getPassword())
-                .build()
-                .api()
-                .pullRequestApi()
-                .get(this.projectName, parseRepository(gitConfig.getUrl()), currentPullRequestID);
+    private PullRequest pullRequestFrom(GitConfig gitConfig, int currentPullRequestID) {
+        String bitbucketUrl = apiUrlOf(gitConfig);
+        try (BitbucketClientPool.Lease lease = BitbucketClientPool.shared().acquire(bitbucketUrl, credentialsOf(gitConfig))) {
+            return prIndex.get(lease.api().api().pullRequestApi(), bitbucketUrl, projectNameOf(gitConfig),
+                    parseRepository(gitConfig.getUrl()), currentPullRequestID);
+        }
+    }
+
+    private String credentialsOf(GitConfig gitConfig) {
+        String auth = String.format("%s:%s", gitConfig.getUsername(), gitConfig.getPassword());
+        byte[] encodedAuth = Base64.encodeBase64(auth.getBytes(Charset.forName("ISO-8859-1")));
+        return new String(encodedAuth);
     }
 
-    private Function<PullRequest, PullRequestStatus> transformBBPullRequestToPullRequestStatus(final String mergedSHA) {
+    private Function<PullRequest, PullRequestStatus> transformBBPullRequestToPullRequestStatus(final String bitbucketUrl, final String mergedSHA) {
         return new Function<PullRequest, PullRequestStatus>() {
             @Override
             public PullRequestStatus apply(PullRequest input) {
                 try {
-                    return new PullRequestStatus(input.id(),
-                            "",
+                    return new PullRequestStatus(input.id(), REF_PATTERN,
+                            input.fromRef().latestCommit(),
                             mergedSHA,
                             input.fromRef().id(),
                             input.toRef().id(),
@@ -0,0 +1,73 @@
+package in.ashwanthkumar.gocd.github.provider.bitbucket;
+
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequestPage;
+import com.cdancy.bitbucket.rest.features.PullRequestApi;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import in.ashwanthkumar.gocd.github.util.ExpiringCache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Open PRs of a repository by id. The index is built from fully paged list calls and kept for about the length of
+ * a poll, so that every revision of the poll is enriched with a lookup instead of API calls of its own.
+ */
+class BitbucketPullRequestIndex {
+    private static final Logger LOG = Logger.getLoggerFor(BitbucketPullRequestIndex.class);
+
+    public static final String TTL_PROPERTY = "go.plugin.bitbucket.pr-index.ttl-seconds";
+    static final int PAGE_SIZE = 100;
+    // A PR missing from the index is likely new, but don't rebuild more often than this for PRs that are not open
+    private static final long MIN_REBUILD_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private static final BitbucketPullRequestIndex INSTANCE = new BitbucketPullRequestIndex(
+            TimeUnit.SECONDS.toMillis(Long.getLong(TTL_PROPERTY, 60L)));
+
+    private final ExpiringCache<String, Index> indexes;
+
+    BitbucketPullRequestIndex(long ttlMillis) {
+        this.indexes = new ExpiringCache<>("bitbucket-pr-index", 1000, ttlMillis);
+    }
+
+    static BitbucketPullRequestIndex shared() {
+        return INSTANCE;
+    }
+
+    PullRequest get(PullRequestApi api, String endpoint, String project, String repository, int prId) {
+        String key = String.format("%s/%s/%s", endpoint, project, repository);
+        Index index = indexes.get(key);
+        if (index == null || (!index.pullRequests.containsKey(prId)
+                && System.currentTimeMillis() - index.builtAtMillis > MIN_REBUILD_INTERVAL_MILLIS)) {
+            index = build(api, project, repository);
+            indexes.put(key, index);
+        }
+        return index.pullRequests.get(prId);
+    }
+
+    private Index build(PullRequestApi api, String project, String repository) {
+        Map<Integer, PullRequest> pullRequests = new HashMap<>();
+        Integer start = 0;
+        int pages = 0;
+        while (start != null) {
+            PullRequestPage page = api.list(project, repository, null, null, "OPEN", "NEWEST", true, true, start, PAGE_SIZE);
+            pages++;
+            for (PullRequest pullRequest : page.values()) {
+                pullRequests.put(pullRequest.id(), pullRequest);
+            }
+            start = page.isLastPage() || page.values().isEmpty() ? null : page.nextPageStart();
+        }
+        LOG.info(String.format("Indexed %d open PRs of %s/%s in %d page(s)", pullRequests.size(), project, repository, pages));
+        return new Index(pullRequests);
+    }
+
+    private static class Index {
+        private final Map<Integer, PullRequest> pullRequests;
+        private final long builtAtMillis = System.currentTimeMillis();
+
+        private Index(Map<Integer, PullRequest> pullRequests) {
+            this.pullRequests = pullRequests;
+        }
+    }
+}
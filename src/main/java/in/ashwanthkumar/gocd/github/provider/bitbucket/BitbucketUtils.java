@@ -1,9 +1,7 @@
 package in.ashwanthkumar.gocd.github.provider.bitbucket;
 
-import org.apache.commons.io.IOUtils;
+import in.ashwanthkumar.gocd.github.util.PropertyFileSnapshots;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Properties;
 
@@ -28,15 +26,6 @@ public class BitbucketUtils {
     }
 
     public static Properties readPropertyFile() throws IOException {
-        File propertyFile = new File(System.getProperty("user.home"), ".bitbucket");
-        Properties props = new Properties();
-        FileInputStream in = null;
-        try {
-            in = new FileInputStream(propertyFile);
-            props.load(in);
-        } finally {
-            IOUtils.closeQuietly(in);
-        }
-        return props;
+        return PropertyFileSnapshots.shared().inUserHome(".bitbucket");
     }
 }
@@ -1,21 +1,52 @@
 package in.ashwanthkumar.gocd.github.provider.gerrit;
 
+import com.google.gson.reflect.TypeToken;
 import com.thoughtworks.go.plugin.api.GoPluginIdentifier;
+import com.thoughtworks.go.plugin.api.logging.Logger;
 import com.tw.go.plugin.HelperFactory;
 import com.tw.go.plugin.model.GitConfig;
+import com.tw.go.plugin.util.StringUtil;
+import in.ashwanthkumar.gocd.github.provider.ApiChangeDetector;
 import in.ashwanthkumar.gocd.github.provider.Provider;
+import in.ashwanthkumar.gocd.github.provider.PullRequestHeads;
+import in.ashwanthkumar.gocd.github.provider.gerrit.model.ChangeInfo;
 import in.ashwanthkumar.gocd.github.settings.general.DefaultGeneralPluginConfigurationView;
 import in.ashwanthkumar.gocd.github.settings.general.GeneralPluginConfigurationView;
 import in.ashwanthkumar.gocd.github.settings.scm.DefaultScmPluginConfigurationView;
 import in.ashwanthkumar.gocd.github.settings.scm.ScmPluginConfigurationView;
+import in.ashwanthkumar.gocd.github.util.JSONUtils;
+import in.ashwanthkumar.gocd.github.util.PollDeadline;
 import in.ashwanthkumar.gocd.github.util.URLUtils;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-public class GerritProvider implements Provider {
+public class GerritProvider implements Provider, ApiChangeDetector {
+    private static final Logger LOG = Logger.getLoggerFor(GerritProvider.class);
     public static final String REF_SPEC = "+refs/changes/*:refs/changes/*";
     public static final String REF_PATTERN = "refs/changes/";
+    public static final String REST_ENDPOINT_PROPERTY = "go.plugin.gerrit.rest-endpoint";
+    // <last two digits>/<change>/<patchset>
+    private static final Pattern PATCHSET_REF = Pattern.compile("\\d+/(\\d+)/(\\d+)");
+    private static final TypeToken<List<ChangeInfo>> CHANGES_TYPE = new TypeToken<List<ChangeInfo>>(){};
+    // Gerrit prefixes every JSON response with this line to prevent XSSI
+    private static final String XSSI_PREFIX = ")]}'";
+    private static final int PAGE_SIZE = 500;
+    public static final String REST_TIMEOUT_PROPERTY = "go.plugin.gerrit.rest-timeout-ms";
 
     @Override
     public GoPluginIdentifier getPluginId() {
@@ -51,30 +82,195 @@ public class GerritProvider implements Provider {
         return REF_PATTERN;
     }
 
+    /**
+     * Keys of the branch map are patchset refs like 45/12345/7, whether they come from the git refs or from the REST
+     * API, so switching change detection does not make every open change look new. Keep only the highest patchset of
+     * every change, so superseded patchsets are never built; other refs under refs/changes/ (e.g. NoteDb meta) are
+     * dropped.
+     */
+    @Override
+    public Map<String, String> collapseBranchToRevisionMap(Map<String, String> branchToRevisionMap) {
+        Map<String, String> latestPatchsetRefs = new HashMap<>();
+        Map<String, Integer> latestPatchsets = new HashMap<>();
+        for (String ref : branchToRevisionMap.keySet()) {
+            Matcher matcher = PATCHSET_REF.matcher(ref);
+            if (!matcher.matches()) {
+                continue;
+            }
+            String change = matcher.group(1);
+            int patchset = Integer.parseInt(matcher.group(2));
+            Integer latestPatchset = latestPatchsets.get(change);
+            if (latestPatchset == null || patchset > latestPatchset) {
+                latestPatchsets.put(change, patchset);
+                latestPatchsetRefs.put(change, ref);
+            }
+        }
+
+        Map<String, String> collapsed = new HashMap<>();
+        for (String ref : latestPatchsetRefs.values()) {
+            collapsed.put(ref, branchToRevisionMap.get(ref));
+        }
+        return collapsed;
+    }
+
     @Override
     public void populateRevisionData(GitConfig gitConfig, String changeId, String latestSHA, Map<String, String> data) {
         data.put("CHANGE_SET_ID", changeId);
     }
 
     @Override
-    public ScmPluginConfigurationView getScmConfigurationView() {
-        return new DefaultScmPluginConfigurationView();
+    public boolean isApiChangeDetectionEnabled() {
+        return System.getProperty("go.plugin.gerrit.api-change-detection", "N").equals("Y");
     }
 
+    /**
+     * Always lists all open changes with their current revision, keyed by the patchset ref of that revision like the
+     * git branch map is. The listing is cheap enough to repeat on every poll, so no cursor is kept.
+     */
     @Override
-    public GeneralPluginConfigurationView getGeneralConfigurationView() {
-        return new DefaultGeneralPluginConfigurationView();
+    public PullRequestHeads listHeadsSince(GitConfig gitConfig, String cursor) {
+        String endpoint = restEndpoint(gitConfig.getUrl());
+        if (StringUtil.isEmpty(endpoint)) {
+            LOG.info(String.format("No Gerrit REST endpoint for %s, set %s", gitConfig.getUrl(), REST_ENDPOINT_PROPERTY));
+            return null;
+        }
+        String project = projectOf(gitConfig.getUrl(), endpoint);
+
+        PullRequestHeads heads = new PullRequestHeads(true, null);
+        int start = 0;
+        boolean moreChanges = true;
+        while (moreChanges) {
+            List<ChangeInfo> changes = queryOpenChanges(gitConfig, endpoint, project, start);
+            for (ChangeInfo change : changes) {
+                String ref = change.getCurrentRef();
+                if (ref == null || !ref.startsWith(REF_PATTERN)) {
+                    LOG.warn(String.format("Skipping change %d without current patchset ref", change.getNumber()));
+                    continue;
+                }
+                heads.open(ref.substring(REF_PATTERN.length()), change.getCurrentRevision());
+            }
+            start += changes.size();
+            moreChanges = !changes.isEmpty() && changes.get(changes.size() - 1).hasMoreChanges();
+        }
+        return heads;
+    }
+
+    /**
+     * Only the patchset in the branch map, e.g. refs/changes/45/12345/7.
+     */
+    @Override
+    public String getRefSpec(String patchset) {
+        String patchsetRef = REF_PATTERN + patchset;
+        return String.format("+%s:%s", patchsetRef, patchsetRef);
+    }
+
+    private List<ChangeInfo> queryOpenChanges(GitConfig gitConfig, String endpoint, String project, int start) {
+        boolean authenticated = !StringUtil.isEmpty(gitConfig.getUsername()) && !StringUtil.isEmpty(gitConfig.getPassword());
+        HttpURLConnection connection = null;
+        try {
+            String query = URLEncoder.encode(String.format("status:open project:%s", project), "UTF-8");
+            URL url = new URL(String.format("%s%s/changes/?q=%s&o=CURRENT_REVISION&n=%d&S=%d",
+                    endpoint, authenticated ? "/a" : "", query, PAGE_SIZE, start));
+            connection = (HttpURLConnection) url.openConnection();
+            int timeoutMillis = Math.min(Integer.getInteger(REST_TIMEOUT_PROPERTY, 30000), PollDeadline.clientTimeoutMillis());
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            connection.setRequestProperty("Accept", "application/json");
+            if (authenticated) {
+                String auth = String.format("%s:%s", gitConfig.getUsername(), gitConfig.getPassword());
+                connection.setRequestProperty("Authorization",
+                        "Basic " + new String(Base64.encodeBase64(auth.getBytes(StandardCharsets.UTF_8))));
+            }
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException(String.format("Gerrit returned %d for %s", connection.getResponseCode(), url));
+            }
+            try (InputStream in = connection.getInputStream()) {
+                String body = IOUtils.toString(in, StandardCharsets.UTF_8);
+                if (body.startsWith(XSSI_PREFIX)) {
+                    body = body.substring(XSSI_PREFIX.length());
+                }
+                return JSONUtils.fromJSON(body, CHANGES_TYPE);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to query open changes. %s", e.getMessage()), e);
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * The REST endpoint is the system property if set, otherwise derived from an http(s) clone URL: Gerrit serves
+     * projects at <endpoint>/<project> and <endpoint>/a/<project>, so the endpoint is the scheme, host and port plus
+     * the path in front of an "a" segment. A clone URL of a Gerrit under a context path (e.g. https://host/r/project)
+     * without the "a" segment can not be told apart from a project path and needs the system property.
+     */
+    String restEndpoint(String url) {
+        String endpoint = System.getProperty(REST_ENDPOINT_PROPERTY);
+        if (!StringUtil.isEmpty(endpoint)) {
+            return withoutTrailingSlash(endpoint);
+        }
+        try {
+            URI uri = new URI(url);
+            if ("http".equals(uri.getScheme()) || "https".equals(uri.getScheme())) {
+                String path = uri.getPath() == null ? "" : uri.getPath();
+                int authenticatedPrefix = path.indexOf("/a/");
+                String contextPath = authenticatedPrefix < 0 ? null : path.substring(0, authenticatedPrefix);
+                return withoutTrailingSlash(
+                        new URI(uri.getScheme(), null, uri.getHost(), uri.getPort(), contextPath, null, null).toString());
+            }
+        } catch (URISyntaxException e) {
+            // scp-like ssh URL
+        }
+        return null;
+    }
+
+    /**
+     * Project name from the clone URL path without the path of the REST endpoint and the "a" prefix of
+     * authenticated access, e.g. https://host/r/a/team/project.git for endpoint https://host/r or
+     * ssh://user@host:29418/team/project
+     */
+    String projectOf(String url, String endpoint) {
+        String path = pathOf(url);
+        if (path == null) {
+            path = url.substring(url.lastIndexOf(':') + 1);
+        }
+        String contextPath = endpoint == null ? null : pathOf(withoutTrailingSlash(endpoint));
+        if (!StringUtil.isEmpty(contextPath) && path.startsWith(contextPath + "/")) {
+            path = path.substring(contextPath.length());
+        }
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        if (path.startsWith("a/")) {
+            path = path.substring(2);
+        }
+        if (path.endsWith(".git")) {
+            path = path.substring(0, path.length() - 4);
+        }
+        return path;
+    }
+
+    private static String pathOf(String url) {
+        try {
+            return new URI(url).getPath();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private static String withoutTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
     }
 
     @Override
-    public void setApiUrl(String url) {
-        // TODO Auto-generated method stub
-        
+    public ScmPluginConfigurationView getScmConfigurationView() {
+        return new DefaultScmPluginConfigurationView();
     }
 
     @Override
-    public void setProjectName(String name) {
-        // TODO Auto-generated method stub
-        
+    public GeneralPluginConfigurationView getGeneralConfigurationView() {
+        return new DefaultGeneralPluginConfigurationView();
     }
 }
@@ -0,0 +1,46 @@
+package in.ashwanthkumar.gocd.github.provider.gerrit.model;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.Map;
+
+/**
+ * The part of Gerrit's ChangeInfo entity that change detection needs.
+ */
+public class ChangeInfo {
+    @SerializedName("_number")
+    private int number;
+
+    @SerializedName("current_revision")
+    private String currentRevision;
+
+    private Map<String, RevisionInfo> revisions;
+
+    @SerializedName("_more_changes")
+    private boolean moreChanges;
+
+    public int getNumber() {
+        return number;
+    }
+
+    public String getCurrentRevision() {
+        return currentRevision;
+    }
+
+    /**
+     * Ref of the current patchset, e.g. refs/changes/45/12345/7, null when the query did not ask for it.
+     */
+    public String getCurrentRef() {
+        if (revisions == null || !revisions.containsKey(currentRevision)) {
+            return null;
+        }
+        return revisions.get(currentRevision).getRef();
+    }
+
+    /**
+     * Set on the last change of a page when there are more changes to query.
+     */
+    public boolean hasMoreChanges() {
+        return moreChanges;
+    }
+}
@@ -0,0 +1,12 @@
+package in.ashwanthkumar.gocd.github.provider.gerrit.model;
+
+/**
+ * The part of Gerrit's RevisionInfo entity that change detection needs.
+ */
+public class RevisionInfo {
+    private String ref;
+
+    public String getRef() {
+        return ref;
+    }
+}
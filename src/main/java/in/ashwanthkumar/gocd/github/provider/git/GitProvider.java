@@ -68,17 +68,4 @@ public class GitProvider implements Provider {
     public GeneralPluginConfigurationView getGeneralConfigurationView() {
         return new DefaultGeneralPluginConfigurationView();
     }
-
-    @Override
-    public void setApiUrl(String url) {
-        // TODO Auto-generated method stub
-        
-    }
-
-    @Override
-    public void setProjectName(String name) {
-        // TODO Auto-generated method stub
-        
-    }
-
 }
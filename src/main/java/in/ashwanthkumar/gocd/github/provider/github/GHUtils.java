@@ -1,12 +1,10 @@
 package in.ashwanthkumar.gocd.github.provider.github;
 
-import org.apache.commons.io.IOUtils;
+import in.ashwanthkumar.gocd.github.util.PropertyFileSnapshots;
 import org.eclipse.jgit.lib.Ref;
 import org.kohsuke.github.GitHub;
 import org.kohsuke.github.GitHubBuilder;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Properties;
 
@@ -40,15 +38,6 @@ public class GHUtils {
     }
 
     public static Properties readPropertyFile() throws IOException {
-        File propertyFile = new File(System.getProperty("user.home"), ".github");
-        Properties props = new Properties();
-        FileInputStream in = null;
-        try {
-            in = new FileInputStream(propertyFile);
-            props.load(in);
-        } finally {
-            IOUtils.closeQuietly(in);
-        }
-        return props;
+        return PropertyFileSnapshots.shared().inUserHome(".github");
     }
 }
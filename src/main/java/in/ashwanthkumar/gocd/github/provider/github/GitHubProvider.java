@@ -3,33 +3,55 @@ package in.ashwanthkumar.gocd.github.provider.github;
 import com.thoughtworks.go.plugin.api.GoPluginIdentifier;
 import com.tw.go.plugin.model.GitConfig;
 import com.tw.go.plugin.util.StringUtil;
+import in.ashwanthkumar.gocd.github.provider.AuthorProfileCache;
+import in.ashwanthkumar.gocd.github.provider.AuthorProfileCache.AuthorProfile;
+import in.ashwanthkumar.gocd.github.provider.ApiChangeDetector;
 import in.ashwanthkumar.gocd.github.provider.Provider;
+import in.ashwanthkumar.gocd.github.provider.PullRequestHeads;
+import in.ashwanthkumar.gocd.github.provider.PullRequestMetadataCache;
+import in.ashwanthkumar.gocd.github.provider.RateLimitGovernor;
 import in.ashwanthkumar.gocd.github.provider.github.model.PullRequestStatus;
 import in.ashwanthkumar.gocd.github.settings.general.DefaultGeneralPluginConfigurationView;
 import in.ashwanthkumar.gocd.github.settings.general.GeneralPluginConfigurationView;
 import in.ashwanthkumar.gocd.github.settings.scm.GithubScmPluginConfigurationView;
 import in.ashwanthkumar.gocd.github.settings.scm.ScmPluginConfigurationView;
+import in.ashwanthkumar.gocd.github.util.PollDeadline;
 import in.ashwanthkumar.gocd.github.util.URLUtils;
 import in.ashwanthkumar.utils.func.Function;
 import in.ashwanthkumar.utils.lang.StringUtils;
+import org.kohsuke.github.GHDirection;
+import org.kohsuke.github.GHIssueState;
 import org.kohsuke.github.GHPullRequest;
+import org.kohsuke.github.GHPullRequestQueryBuilder;
+import org.kohsuke.github.GHRateLimit;
 import org.kohsuke.github.GHUser;
 import org.kohsuke.github.GitHub;
+import org.kohsuke.github.GitHubBuilder;
+import org.kohsuke.github.HttpConnector;
+import org.kohsuke.github.RateLimitHandler;
+import org.kohsuke.github.extras.ImpatientHttpConnector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Properties;
 
-public class GitHubProvider implements Provider {
+public class GitHubProvider implements Provider, ApiChangeDetector {
     private static final Logger LOG = LoggerFactory.getLogger(GitHubProvider.class);
     // public static final String PR_FETCH_REFSPEC = "+refs/pull/*/merge:refs/gh-merge/remotes/origin/*";
     // public static final String PR_MERGE_PREFIX = "refs/gh-merge/remotes/origin/";
     public static final String REF_SPEC = "+refs/pull/*/head:refs/remotes/origin/pull-request/*";
     public static final String REF_PATTERN = "refs/remotes/origin/pull-request/";
     public static final String PUBLIC_GITHUB_ENDPOINT = "https://api.github.com";
+    public static final String API_ENDPOINT_PROPERTY = "go.plugin.github.api-endpoint";
+    private static final int PULL_REQUEST_PAGE_SIZE = 100;
+
+    private final RateLimitGovernor rateLimitGovernor = RateLimitGovernor.shared();
+    private final AuthorProfileCache authorProfileCache = AuthorProfileCache.shared();
+    private final PullRequestMetadataCache prMetadataCache = PullRequestMetadataCache.shared();
 
     @Override
     public GoPluginIdentifier getPluginId() {
@@ -64,7 +86,13 @@ public class GitHubProvider implements Provider {
     @Override
     public void checkConnection(GitConfig gitConfig) {
         try {
-            loginWith(gitConfig).getRepository(GHUtils.parseGithubUrl(gitConfig.getEffectiveUrl()));
+            GitHub github = loginWith(gitConfig);
+            rateLimitGovernor.acquire(github.getApiUrl(), RateLimitGovernor.Priority.HIGH);
+            try {
+                github.getRepository(GHUtils.parseGithubUrl(gitConfig.getEffectiveUrl()));
+            } finally {
+                recordRateLimit(github);
+            }
         } catch (Exception e) {
             throw new RuntimeException(String.format("check connection failed. %s", e.getMessage()), e);
         }
@@ -84,6 +112,12 @@ public class GitHubProvider implements Provider {
     public void populateRevisionData(GitConfig gitConfig, String prId, String prSHA, Map<String, String> data) {
         data.put("PR_ID", prId);
 
+        Map<String, String> cachedMetadata = prMetadataCache.get(gitConfig.getUrl(), prId, prSHA);
+        if (cachedMetadata != null) {
+            data.putAll(cachedMetadata);
+            return;
+        }
+
         PullRequestStatus prStatus = null;
         boolean isDisabled = System.getProperty("go.plugin.github.pr.populate-details", "Y").equals("N");
         LOG.debug("Populating PR details is disabled");
@@ -92,16 +126,100 @@ public class GitHubProvider implements Provider {
         }
 
         if (prStatus != null) {
-            data.put("PR_BRANCH", String.valueOf(prStatus.getPrBranch()));
-            data.put("TARGET_BRANCH", String.valueOf(prStatus.getToBranch()));
-            data.put("PR_URL", String.valueOf(prStatus.getUrl()));
-            data.put("PR_AUTHOR", prStatus.getAuthor());
-            data.put("PR_AUTHOR_EMAIL", prStatus.getAuthorEmail());
-            data.put("PR_DESCRIPTION", prStatus.getDescription());
-            data.put("PR_TITLE", prStatus.getTitle());
+            Map<String, String> metadata = prStatus.metadata();
+            prMetadataCache.put(gitConfig.getUrl(), prId, prSHA, metadata);
+            data.putAll(metadata);
+        }
+    }
+
+    @Override
+    public boolean isApiChangeDetectionEnabled() {
+        return System.getProperty("go.plugin.github.pr.api-change-detection", "N").equals("Y");
+    }
+
+    /**
+     * Without a cursor this lists all open PRs. With one, it pages through PRs of any state by update time, newest
+     * first, and stops at the first PR that was last updated before the cursor.
+     */
+    @Override
+    public PullRequestHeads listHeadsSince(GitConfig gitConfig, String cursor) {
+        GitHub github = null;
+        try {
+            github = loginWith(gitConfig);
+            if (!rateLimitGovernor.acquire(github.getApiUrl(), RateLimitGovernor.Priority.HIGH)) {
+                LOG.info("Rate limit is low, not listing PRs of {}", gitConfig.getUrl());
+                return null;
+            }
+            try {
+                return listHeadsSince(github, gitConfig, cursor);
+            } finally {
+                recordRateLimit(github);
+            }
+        } catch (IOException e) {
+            if (github != null && rateLimitGovernor.isExhausted(github.getApiUrl())) {
+                LOG.warn("Rate limit exhausted, not listing PRs of {}: {}", gitConfig.getUrl(), e.getMessage());
+                return null;
+            }
+            throw new RuntimeException(String.format("Failed to list pull requests. %s", e.getMessage()), e);
+        }
+    }
+
+    private PullRequestHeads listHeadsSince(GitHub github, GitConfig gitConfig, String cursor) throws IOException {
+        Instant watermark = cursor == null ? null : Instant.parse(cursor);
+        GHPullRequestQueryBuilder query = github
+                .getRepository(GHUtils.parseGithubUrl(gitConfig.getEffectiveUrl()))
+                .queryPullRequests()
+                .sort(GHPullRequestQueryBuilder.Sort.UPDATED)
+                .direction(GHDirection.DESC)
+                .state(watermark == null ? GHIssueState.OPEN : GHIssueState.ALL);
+
+        PullRequestHeads heads = new PullRequestHeads(watermark == null, cursor);
+        Instant latestUpdate = watermark;
+        for (GHPullRequest pullRequest : query.list().withPageSize(PULL_REQUEST_PAGE_SIZE)) {
+            Instant updatedAt = pullRequest.getUpdatedAt().toInstant();
+            if (watermark != null && updatedAt.isBefore(watermark)) {
+                break;
+            }
+            if (latestUpdate == null || updatedAt.isAfter(latestUpdate)) {
+                latestUpdate = updatedAt;
+            }
+
+            String prId = String.valueOf(pullRequest.getNumber());
+            if (pullRequest.getState() != GHIssueState.OPEN) {
+                heads.closed(prId);
+                continue;
+            }
+            String headSHA = pullRequest.getHead().getSha();
+            heads.open(prId, headSHA);
+            if (watermark != null) {
+                preloadMetadata(github, gitConfig, prId, headSHA, pullRequest);
+            }
+        }
+        heads.setCursor(latestUpdate == null ? null : latestUpdate.toString());
+        return heads;
+    }
+
+    /**
+     * Only done for the PRs of an incremental listing; resolving the author of every open PR on the first
+     * listing would cost a call per author.
+     */
+    private void preloadMetadata(GitHub github, GitConfig gitConfig, String prId, String headSHA, GHPullRequest pullRequest) {
+        if (System.getProperty("go.plugin.github.pr.populate-details", "Y").equals("N")) {
+            return;
+        }
+        try {
+            PullRequestStatus prStatus = transformGHPullRequestToPullRequestStatus(github.getApiUrl(), headSHA).apply(pullRequest);
+            prMetadataCache.put(gitConfig.getUrl(), prId, headSHA, prStatus.metadata());
+        } catch (Exception e) {
+            LOG.debug("Could not preload details of PR #{} of {}: {}", prId, gitConfig.getUrl(), e.getMessage());
         }
     }
 
+    @Override
+    public String getRefSpec(String branch) {
+        return REF_SPEC.replace("*", branch);
+    }
+
     @Override
     public ScmPluginConfigurationView getScmConfigurationView() {
         return new GithubScmPluginConfigurationView();
@@ -113,32 +231,57 @@ public class GitHubProvider implements Provider {
     }
 
     private PullRequestStatus getPullRequestStatus(GitConfig gitConfig, String prId, String prSHA) {
+        GitHub github = null;
         try {
-            GHPullRequest currentPR = pullRequestFrom(gitConfig, Integer.parseInt(prId));
-            return transformGHPullRequestToPullRequestStatus(prSHA).apply(currentPR);
+            github = loginWith(gitConfig);
+            if (!rateLimitGovernor.acquire(github.getApiUrl(), RateLimitGovernor.Priority.LOW)) {
+                LOG.info("Rate limit is low, deferring PR details for #{} of {}", prId, gitConfig.getUrl());
+                return null;
+            }
+            try {
+                GHPullRequest currentPR = pullRequestFrom(github, gitConfig, Integer.parseInt(prId));
+                return transformGHPullRequestToPullRequestStatus(github.getApiUrl(), prSHA).apply(currentPR);
+            } finally {
+                recordRateLimit(github);
+            }
         } catch (Exception e) {
             // ignore
-            LOG.warn(e.getMessage(), e);
+            if (github != null && rateLimitGovernor.isExhausted(github.getApiUrl())) {
+                LOG.warn("Rate limit exhausted, skipping PR details for #{} of {}: {}", prId, gitConfig.getUrl(), e.getMessage());
+            } else {
+                LOG.warn(e.getMessage(), e);
+            }
         }
         return null;
     }
 
-    private GHPullRequest pullRequestFrom(GitConfig gitConfig, int currentPullRequestID) throws IOException {
-        return loginWith(gitConfig)
+    private GHPullRequest pullRequestFrom(GitHub github, GitConfig gitConfig, int currentPullRequestID) throws IOException {
+        return github
                 .getRepository(GHUtils.parseGithubUrl(gitConfig.getEffectiveUrl()))
                 .getPullRequest(currentPullRequestID);
     }
 
-    private Function<GHPullRequest, PullRequestStatus> transformGHPullRequestToPullRequestStatus(final String mergedSHA) {
+    private void recordRateLimit(GitHub github) {
+        if (github == null) {
+            return;
+        }
+        GHRateLimit rateLimit = github.lastRateLimit();
+        if (rateLimit != null && rateLimit.getResetDate() != null) {
+            rateLimitGovernor.update(github.getApiUrl(), rateLimit.getRemaining(), rateLimit.getLimit(),
+                    rateLimit.getResetDate().getTime());
+        }
+    }
+
+    private Function<GHPullRequest, PullRequestStatus> transformGHPullRequestToPullRequestStatus(final String apiUrl, final String mergedSHA) {
         return new Function<GHPullRequest, PullRequestStatus>() {
             @Override
             public PullRequestStatus apply(GHPullRequest input) {
                 int prID = GHUtils.prIdFrom(input.getDiffUrl().toString());
                 try {
-                    GHUser user = input.getUser();
+                    AuthorProfile author = authorProfileOf(apiUrl, input.getUser());
                     return new PullRequestStatus(prID, input.getHead().getSha(), mergedSHA, input.getHead().getLabel(),
-                            input.getBase().getLabel(), input.getHtmlUrl().toString(), user.getName(),
-                            user.getEmail(), input.getBody(), input.getTitle());
+                            input.getBase().getLabel(), input.getHtmlUrl().toString(), author.getName(),
+                            author.getEmail(), input.getBody(), input.getTitle());
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
@@ -146,25 +289,52 @@ public class GitHubProvider implements Provider {
         };
     }
 
-    private GitHub loginWith(GitConfig gitConfig) throws IOException {
-        if (hasCredentials(gitConfig))
-            return GitHub.connect(gitConfig.getUsername(), gitConfig.getPassword());
-        else return GitHub.connect();
+    /**
+     * {@link GHUser#getName()} and {@link GHUser#getEmail()} lazily call /users/{login}, the login does not.
+     */
+    private AuthorProfile authorProfileOf(String apiUrl, GHUser user) throws IOException {
+        AuthorProfile profile = authorProfileCache.get(apiUrl, user.getLogin());
+        if (profile == null) {
+            profile = new AuthorProfile(user.getName(), user.getEmail());
+            authorProfileCache.put(apiUrl, user.getLogin(), profile);
+        }
+        return profile;
     }
 
-    private boolean hasCredentials(GitConfig gitConfig) {
-        return StringUtils.isNotEmpty(gitConfig.getUsername()) && StringUtils.isNotEmpty(gitConfig.getPassword());
+    private GitHub loginWith(GitConfig gitConfig) throws IOException {
+        // Fail fast instead of blocking the poll until the rate limit resets, the governor defers calls instead.
+        // Calls time out with the phase of the poll they are made in.
+        GitHubBuilder builder;
+        if (hasCredentials(gitConfig))
+            builder = new GitHubBuilder().withOAuthToken(gitConfig.getPassword(), gitConfig.getUsername());
+        else builder = GitHubBuilder.fromCredentials();
+        String endpoint = apiEndpoint();
+        if (!StringUtil.isEmpty(endpoint)) {
+            builder.withEndpoint(endpoint);
+        }
+        int timeoutMillis = PollDeadline.clientTimeoutMillis();
+        return builder.withRateLimitHandler(RateLimitHandler.FAIL)
+                .withConnector(new ImpatientHttpConnector(HttpConnector.DEFAULT, timeoutMillis, timeoutMillis))
+                .build();
     }
 
-    @Override
-    public void setApiUrl(String url) {
-        // TODO Auto-generated method stub
-        
+    /**
+     * API endpoint for GitHub Enterprise (e.g. https://github.example.com/api/v3) or a local stand-in, taken from the
+     * system property or the "endpoint" in ~/.github. Defaults to {@link #PUBLIC_GITHUB_ENDPOINT}.
+     */
+    private String apiEndpoint() {
+        String endpoint = System.getProperty(API_ENDPOINT_PROPERTY);
+        if (StringUtil.isEmpty(endpoint)) {
+            try {
+                endpoint = GHUtils.readPropertyFile().getProperty("endpoint");
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        return endpoint;
     }
 
-    @Override
-    public void setProjectName(String name) {
-        // TODO Auto-generated method stub
-        
+    private boolean hasCredentials(GitConfig gitConfig) {
+        return StringUtils.isNotEmpty(gitConfig.getUsername()) && StringUtils.isNotEmpty(gitConfig.getPassword());
     }
 }
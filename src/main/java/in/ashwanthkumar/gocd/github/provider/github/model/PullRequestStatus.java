@@ -2,6 +2,9 @@ package in.ashwanthkumar.gocd.github.provider.github.model;
 
 import in.ashwanthkumar.gocd.github.provider.github.GitHubProvider;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class PullRequestStatus {
     private int id;
     private String mergeRef;
@@ -94,6 +97,21 @@ public class PullRequestStatus {
         return mergeSHA;
     }
 
+    /**
+     * The details of the PR that go into the data bag of its revisions, as cached by the PR metadata cache.
+     */
+    public Map<String, String> metadata() {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("PR_BRANCH", String.valueOf(prBranch));
+        metadata.put("TARGET_BRANCH", String.valueOf(toBranch));
+        metadata.put("PR_URL", String.valueOf(url));
+        metadata.put("PR_AUTHOR", author);
+        metadata.put("PR_AUTHOR_EMAIL", authorEmail);
+        metadata.put("PR_DESCRIPTION", description);
+        metadata.put("PR_TITLE", title);
+        return metadata;
+    }
+
     public PullRequestStatus merge(PullRequestStatus newPRStatus) {
         if (mergeSHA.equalsIgnoreCase(newPRStatus.getMergeSHA())) return copy().mergePRFields(newPRStatus);
         else return new PullRequestStatus(id, lastHead, newPRStatus.mergeSHA, newPRStatus.prBranch, newPRStatus.toBranch,
@@ -0,0 +1,44 @@
+package in.ashwanthkumar.gocd.github.provider.gitlab;
+
+import in.ashwanthkumar.gocd.github.util.ClientPool;
+import in.ashwanthkumar.gocd.github.util.PollDeadline;
+import org.gitlab4j.api.GitLabApi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * {@link GitLabApi} clients (and their Jersey client and connection pool) by server URL and access token.
+ */
+public class GitLabApiPool extends ClientPool<GitLabApi> {
+    public static final String MAX_SIZE_PROPERTY = "go.plugin.gitlab.client-pool.max-size";
+    public static final String IDLE_TIMEOUT_PROPERTY = "go.plugin.gitlab.client-pool.idle-minutes";
+
+    private static final GitLabApiPool INSTANCE = new GitLabApiPool(
+            Integer.getInteger(MAX_SIZE_PROPERTY, 32),
+            TimeUnit.MINUTES.toMillis(Long.getLong(IDLE_TIMEOUT_PROPERTY, 10L)),
+            GitLabApiPool::withTimeouts);
+
+    static {
+        INSTANCE.closeOnShutdown();
+    }
+
+    GitLabApiPool(int maxSize, long idleTimeoutMillis, BiFunction<String, String, GitLabApi> factory) {
+        super("gitlab", maxSize, idleTimeoutMillis, factory, GitLabApi::close);
+    }
+
+    public static GitLabApiPool shared() {
+        return INSTANCE;
+    }
+
+    /**
+     * A pooled client outlives any single poll and is shared by concurrent ones, so its calls time out with the
+     * budget of a whole poll; it is never changed after it was created.
+     */
+    private static GitLabApi withTimeouts(String serverUrl, String accessToken) {
+        GitLabApi api = new GitLabApi(serverUrl, accessToken);
+        int timeoutMillis = (int) Math.min(Integer.MAX_VALUE, PollDeadline.budgetMillis());
+        api.setRequestTimeout(timeoutMillis, timeoutMillis);
+        return api;
+    }
+}
@@ -3,32 +3,57 @@ package in.ashwanthkumar.gocd.github.provider.gitlab;
 import com.thoughtworks.go.plugin.api.GoPluginIdentifier;
 import com.tw.go.plugin.model.GitConfig;
 import com.tw.go.plugin.util.StringUtil;
+import in.ashwanthkumar.gocd.github.provider.ApiChangeDetector;
 import in.ashwanthkumar.gocd.github.provider.Provider;
+import in.ashwanthkumar.gocd.github.provider.PullRequestHeads;
+import in.ashwanthkumar.gocd.github.provider.PullRequestMetadataCache;
+import in.ashwanthkumar.gocd.github.provider.RateLimitGovernor;
 import in.ashwanthkumar.gocd.github.provider.github.model.PullRequestStatus;
 import in.ashwanthkumar.gocd.github.settings.general.DefaultGeneralPluginConfigurationView;
 import in.ashwanthkumar.gocd.github.settings.general.GeneralPluginConfigurationView;
 import in.ashwanthkumar.gocd.github.settings.scm.DefaultScmPluginConfigurationView;
 import in.ashwanthkumar.gocd.github.settings.scm.ScmPluginConfigurationView;
+import in.ashwanthkumar.gocd.github.util.ExpiringCache;
 import in.ashwanthkumar.gocd.github.util.URLUtils;
 import in.ashwanthkumar.utils.func.Function;
 import in.ashwanthkumar.utils.lang.StringUtils;
+import org.gitlab4j.api.Constants.MergeRequestState;
 import org.gitlab4j.api.GitLabApi;
 import org.gitlab4j.api.GitLabApiException;
 import org.gitlab4j.api.models.Author;
 import org.gitlab4j.api.models.MergeRequest;
+import org.gitlab4j.api.models.MergeRequestFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Instant;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
-public class GitLabProvider implements Provider {
+public class GitLabProvider implements Provider, ApiChangeDetector {
     private static final Logger LOG = LoggerFactory.getLogger(GitLabProvider.class);
     public static final String REF_SPEC = "+refs/merge-requests/*/head:refs/remotes/origin/merge-requests/*";
     public static final String REF_PATTERN = "refs/remotes/origin/merge-requests/";
     private static String LOGIN = "login";
     private static String ACCESS_TOKEN = "accessToken";
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final ExpiringCache<String, Integer> PROJECT_IDS =
+            new ExpiringCache<>("gitlab-project-id", 1000, TimeUnit.HOURS.toMillis(1));
+
+    private final RateLimitGovernor rateLimitGovernor = RateLimitGovernor.shared();
+    private final PullRequestMetadataCache prMetadataCache = PullRequestMetadataCache.shared();
+    private final GitLabApiPool clientPool;
+
+    public GitLabProvider() {
+        this(GitLabApiPool.shared());
+    }
+
+    GitLabProvider(GitLabApiPool clientPool) {
+        this.clientPool = clientPool;
+    }
 
     @Override
     public GoPluginIdentifier getPluginId() {
@@ -64,7 +89,9 @@ public class GitLabProvider implements Provider {
     @Override
     public void checkConnection(GitConfig gitConfig) {
         try {
-            loginWith(gitConfig).getProjectApi().getProject(GitLabUtils.getProjectPathFromUrl(gitConfig.getEffectiveUrl()));
+            try (GitLabApiPool.Lease lease = loginWith(gitConfig)) {
+                lease.api().getProjectApi().getProject(GitLabUtils.getProjectPathFromUrl(gitConfig.getEffectiveUrl()));
+            }
         } catch (Exception e) {
             LOG.error(String.format("Check connection failed. %s", e.getMessage()), e);
             throw new RuntimeException(String.format("Check connection failed. %s", e.getMessage()), e);
@@ -85,23 +112,97 @@ public class GitLabProvider implements Provider {
     public void populateRevisionData(GitConfig gitConfig, String prId, String prSHA, Map<String, String> data) {
         data.put("PR_ID", prId);
 
+        Map<String, String> cachedMetadata = prMetadataCache.get(gitConfig.getUrl(), prId, prSHA);
+        if (cachedMetadata != null) {
+            data.putAll(cachedMetadata);
+            return;
+        }
+
         PullRequestStatus prStatus = null;
-        boolean isDisabled = System.getProperty("go.plugin.gitlab.pr.populate-details", "Y").equals("N");
-        if (isDisabled) {
+        if (isPopulateDetailsDisabled()) {
             LOG.debug("Populating PR details is disabled");
         } else {
             prStatus = getPullRequestStatus(gitConfig, prId, prSHA);
         }
 
         if (prStatus != null) {
-            data.put("PR_BRANCH", String.valueOf(prStatus.getPrBranch()));
-            data.put("TARGET_BRANCH", String.valueOf(prStatus.getToBranch()));
-            data.put("PR_URL", String.valueOf(prStatus.getUrl()));
-            data.put("PR_AUTHOR", prStatus.getAuthor());
-            data.put("PR_AUTHOR_EMAIL", prStatus.getAuthorEmail());
-            data.put("PR_DESCRIPTION", prStatus.getDescription());
-            data.put("PR_TITLE", prStatus.getTitle());
+            Map<String, String> metadata = prStatus.metadata();
+            prMetadataCache.put(gitConfig.getUrl(), prId, prSHA, metadata);
+            data.putAll(metadata);
+        }
+    }
+
+    private boolean isPopulateDetailsDisabled() {
+        return System.getProperty("go.plugin.gitlab.pr.populate-details", "Y").equals("N");
+    }
+
+    @Override
+    public boolean isApiChangeDetectionEnabled() {
+        return System.getProperty("go.plugin.gitlab.pr.api-change-detection", "N").equals("Y");
+    }
+
+    @Override
+    public PullRequestHeads listHeadsSince(GitConfig gitConfig, String cursor) {
+        String serverUrl = GitLabUtils.getServerUrl(gitConfig.getEffectiveUrl());
+        if (!rateLimitGovernor.acquire(serverUrl, RateLimitGovernor.Priority.HIGH)) {
+            LOG.info(String.format("Rate limit is low, not listing MRs of %s", gitConfig.getUrl()));
+            return null;
+        }
+        try (GitLabApiPool.Lease lease = loginWith(gitConfig)) {
+            MergeRequestFilter filter = new MergeRequestFilter()
+                    .withProjectId(projectIdOf(lease.api(), GitLabUtils.getProjectPathFromUrl(gitConfig.getEffectiveUrl())));
+            if (cursor == null) {
+                filter.withState(MergeRequestState.OPENED);
+            } else {
+                // updated_after is inclusive, so the MR at the cursor is listed again; its head simply did not move
+                filter.withState(MergeRequestState.ALL).withUpdatedAfter(Date.from(Instant.parse(cursor)));
+            }
+
+            PullRequestHeads heads = new PullRequestHeads(cursor == null, cursor);
+            Instant latestUpdate = cursor == null ? null : Instant.parse(cursor);
+            for (MergeRequest mergeRequest : lease.api().getMergeRequestApi().getMergeRequests(filter)) {
+                String prId = String.valueOf(mergeRequest.getIid());
+                if ("opened".equals(mergeRequest.getState())) {
+                    heads.open(prId, mergeRequest.getSha());
+                    if (!isPopulateDetailsDisabled()) {
+                        // the listing carries everything populateRevisionData needs, so save it the extra call
+                        PullRequestStatus prStatus = transformMergeRequestToPullRequestStatus(mergeRequest.getSha()).apply(mergeRequest);
+                        prMetadataCache.put(gitConfig.getUrl(), prId, mergeRequest.getSha(), prStatus.metadata());
+                    }
+                } else {
+                    heads.closed(prId);
+                }
+                if (mergeRequest.getUpdatedAt() != null
+                        && (latestUpdate == null || mergeRequest.getUpdatedAt().toInstant().isAfter(latestUpdate))) {
+                    latestUpdate = mergeRequest.getUpdatedAt().toInstant();
+                }
+            }
+            heads.setCursor(latestUpdate == null ? null : latestUpdate.toString());
+            return heads;
+        } catch (GitLabApiException e) {
+            if (e.getHttpStatus() == TOO_MANY_REQUESTS) {
+                rateLimitGovernor.exhausted(serverUrl,
+                        System.currentTimeMillis() + RateLimitGovernor.DEFAULT_EXHAUSTED_BACKOFF_MILLIS);
+                LOG.warn(String.format("Rate limit exhausted, not listing MRs of %s", gitConfig.getUrl()));
+                return null;
+            }
+            throw new RuntimeException(String.format("Failed to list merge requests. %s", e.getMessage()), e);
+        }
+    }
+
+    @Override
+    public String getRefSpec(String branch) {
+        return REF_SPEC.replace("*", branch);
+    }
+
+    private Integer projectIdOf(GitLabApi api, String projectPath) throws GitLabApiException {
+        String key = api.getGitLabServerUrl() + "/" + projectPath;
+        Integer projectId = PROJECT_IDS.get(key);
+        if (projectId == null) {
+            projectId = api.getProjectApi().getProject(projectPath).getId();
+            PROJECT_IDS.put(key, projectId);
         }
+        return projectId;
     }
 
     @Override
@@ -115,9 +216,22 @@ public class GitLabProvider implements Provider {
     }
 
     private PullRequestStatus getPullRequestStatus(GitConfig gitConfig, String prId, String prSHA) {
+        String serverUrl = GitLabUtils.getServerUrl(gitConfig.getEffectiveUrl());
+        if (!rateLimitGovernor.acquire(serverUrl, RateLimitGovernor.Priority.LOW)) {
+            LOG.info(String.format("Rate limit is low, deferring PR details for !%s of %s", prId, gitConfig.getUrl()));
+            return null;
+        }
         try {
             MergeRequest currentPR = pullRequestFrom(gitConfig, Integer.parseInt(prId));
             return transformMergeRequestToPullRequestStatus(prSHA).apply(currentPR);
+        } catch (GitLabApiException e) {
+            if (e.getHttpStatus() == TOO_MANY_REQUESTS) {
+                rateLimitGovernor.exhausted(serverUrl,
+                        System.currentTimeMillis() + RateLimitGovernor.DEFAULT_EXHAUSTED_BACKOFF_MILLIS);
+                LOG.warn(String.format("Rate limit exhausted, skipping PR details for !%s of %s", prId, gitConfig.getUrl()));
+            } else {
+                LOG.error(String.format("Failed to fetch PR status. %s", e.getMessage()), e);
+            }
         } catch (Exception e) {
             // ignore
             LOG.error(String.format("Failed to fetch PR status. %s", e.getMessage()), e);
@@ -126,9 +240,11 @@ public class GitLabProvider implements Provider {
     }
 
     private MergeRequest pullRequestFrom(GitConfig gitConfig, int currentPullRequestID) throws GitLabApiException {
-        return loginWith(gitConfig)
-                .getMergeRequestApi()
-                .getMergeRequest(GitLabUtils.getProjectPathFromUrl(gitConfig.getEffectiveUrl()), currentPullRequestID);
+        try (GitLabApiPool.Lease lease = loginWith(gitConfig)) {
+            return lease.api()
+                    .getMergeRequestApi()
+                    .getMergeRequest(GitLabUtils.getProjectPathFromUrl(gitConfig.getEffectiveUrl()), currentPullRequestID);
+        }
     }
 
     private Function<MergeRequest, PullRequestStatus> transformMergeRequestToPullRequestStatus(final String mergedSHA) {
@@ -144,11 +260,10 @@ public class GitLabProvider implements Provider {
         };
     }
 
-    private GitLabApi loginWith(GitConfig gitConfig) throws RuntimeException {
-        if (hasCredentials(gitConfig))
-            return new GitLabApi(GitLabUtils.getServerUrl(gitConfig.getEffectiveUrl()),
-                    gitConfig.getPassword());
-        else {
+    private GitLabApiPool.Lease loginWith(GitConfig gitConfig) throws RuntimeException {
+        if (hasCredentials(gitConfig)) {
+            return clientPool.acquire(GitLabUtils.getServerUrl(gitConfig.getEffectiveUrl()), gitConfig.getPassword());
+        } else {
             LOG.error("No gitlab credentials found");
             throw new RuntimeException("No gitlab credentials found");
         }
@@ -157,16 +272,4 @@ public class GitLabProvider implements Provider {
     private boolean hasCredentials(GitConfig gitConfig) {
         return StringUtils.isNotEmpty(gitConfig.getUsername()) && StringUtils.isNotEmpty(gitConfig.getPassword());
     }
-
-    @Override
-    public void setApiUrl(String url) {
-        // TODO Auto-generated method stub
-        
-    }
-
-    @Override
-    public void setProjectName(String name) {
-        // TODO Auto-generated method stub
-        
-    }
 }
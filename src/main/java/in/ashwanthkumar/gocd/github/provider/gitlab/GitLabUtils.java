@@ -1,10 +1,8 @@
 package in.ashwanthkumar.gocd.github.provider.gitlab;
 
-import org.apache.commons.io.IOUtils;
+import in.ashwanthkumar.gocd.github.util.PropertyFileSnapshots;
 import org.apache.commons.lang.StringUtils;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Properties;
@@ -30,16 +28,7 @@ public class GitLabUtils {
     public static final int URL_WITHOUT_PROTOCOL_START_INDEX = 1;
 
     public static Properties readPropertyFile() throws IOException {
-        File propertyFile = new File(System.getProperty("user.home"), ".gitlab");
-        Properties props = new Properties();
-        FileInputStream in = null;
-        try {
-            in = new FileInputStream(propertyFile);
-            props.load(in);
-        } finally {
-            IOUtils.closeQuietly(in);
-        }
-        return props;
+        return PropertyFileSnapshots.shared().inUserHome(".gitlab");
     }
 
     public static Boolean isSSHUrl(String url) {
@@ -22,6 +22,9 @@ public class BitbucketScmPluginConfigurationView implements ScmPluginConfigurati
         response.put("projectName",  FieldFactory.createForScm("Project name", null, false, true, false, "4"));
         response.put("defaultBranch", FieldFactory.createForScm("Default Branch", "master", false, false, false, "5"));
         response.put("shallowClone", FieldFactory.createForScm("Default Clone Behavior", "false", false, false, false, "6"));
+        response.put(SHARED_CACHE_PROPERTY_NAME, FieldFactory.createForScm("Shared Object Cache", "false", false, false, false, "7"));
+        response.put(CLONE_FILTER_PROPERTY_NAME, FieldFactory.createForScm("Partial Clone Filter", "", false, false, false, "8"));
+        response.put(SPARSE_PATHS_PROPERTY_NAME, FieldFactory.createForScm("Sparse Checkout Paths", "", false, false, false, "9"));
         return response;
     }
 
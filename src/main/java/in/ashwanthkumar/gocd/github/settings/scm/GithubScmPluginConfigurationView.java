@@ -28,6 +28,12 @@ public class GithubScmPluginConfigurationView extends GitScmPluginConfigurationV
                 FieldFactory.createForScm("Whitelisted branches", "", true, false, false, "5"));
         fields.put(BRANCH_BLACKLIST_PROPERTY_NAME,
                 FieldFactory.createForScm("Blacklisted branches", "", true, false, false, "6"));
+        fields.put(SHARED_CACHE_PROPERTY_NAME,
+                FieldFactory.createForScm("Shared Object Cache", "false", false, false, false, "7"));
+        fields.put(CLONE_FILTER_PROPERTY_NAME,
+                FieldFactory.createForScm("Partial Clone Filter", "", false, false, false, "8"));
+        fields.put(SPARSE_PATHS_PROPERTY_NAME,
+                FieldFactory.createForScm("Sparse Checkout Paths", "", false, false, false, "9"));
         return fields;
     }
 }
@@ -5,6 +5,9 @@ import in.ashwanthkumar.gocd.github.util.BranchFilter;
 import java.util.Map;
 
 public interface ScmPluginConfigurationView extends PluginConfigurationView {
+    String SHARED_CACHE_PROPERTY_NAME = "sharedCache";
+    String CLONE_FILTER_PROPERTY_NAME = "cloneFilter";
+    String SPARSE_PATHS_PROPERTY_NAME = "sparsePaths";
 
     BranchFilter getBranchFilter(Map<String, String> configuration);
 }
@@ -0,0 +1,268 @@
+package in.ashwanthkumar.gocd.github.util;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+
+/**
+ * Keeps API clients around by server URL and credentials, instead of creating a new one (and with it an HTTP
+ * stack and its threads) for every call. The pool is bounded in size, evicts clients that have been idle for too
+ * long and closes every client when the pool is closed. Clients are handed out as leases, so a client that is
+ * evicted while in use is only closed once the last lease is returned. Clients are created outside the lock of the
+ * pool; threads asking for a client that is being created wait for it instead of creating another.
+ * Exports {@code <name>.client-pool.created}, {@code .reused} and {@code .evicted} counters and a {@code .size} gauge.
+ */
+public class ClientPool<C> {
+    private static final Logger LOG = Logger.getLoggerFor(ClientPool.class);
+
+    private final String name;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final BiFunction<String, String, C> factory;
+    private final Closer<C> closer;
+    private final LinkedHashMap<Key, PooledClient<C>> clients = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, CompletableFuture<Void>> builds = new HashMap<>();
+    private boolean closed;
+
+    public ClientPool(String name, int maxSize, long idleTimeoutMillis, BiFunction<String, String, C> factory, Closer<C> closer) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.factory = factory;
+        this.closer = closer;
+    }
+
+    /**
+     * Close all pooled clients when the JVM shuts down; the plugin API has no shutdown callback of its own.
+     */
+    protected void closeOnShutdown() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, name + "-client-pool-shutdown"));
+    }
+
+    public Lease acquire(String serverUrl, String credentials) {
+        Key key = new Key(serverUrl, credentials);
+        while (true) {
+            List<PooledClient<C>> evicted = new ArrayList<>();
+            PooledClient<C> client;
+            CompletableFuture<Void> build;
+            boolean building = false;
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException(String.format("%s client pool is closed", name));
+                }
+                evictIdle(System.currentTimeMillis(), evicted);
+
+                client = clients.get(key);
+                build = builds.get(key);
+                if (client != null) {
+                    PluginMetrics.shared().increment(metric("reused"));
+                    lease(client);
+                } else if (build == null) {
+                    build = new CompletableFuture<>();
+                    builds.put(key, build);
+                    building = true;
+                }
+            }
+            closeAll(evicted);
+            if (client != null) {
+                return new Lease(client);
+            }
+            if (building) {
+                return new Lease(build(key, build));
+            }
+            // another thread is building the client, take it from the pool once it is there
+            try {
+                build.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+    }
+
+    /**
+     * Create the client outside the lock of the pool, so a slow factory does not hold up clients of other servers.
+     */
+    private PooledClient<C> build(Key key, CompletableFuture<Void> build) {
+        PooledClient<C> client;
+        try {
+            client = new PooledClient<>(factory.apply(key.serverUrl, key.credentials));
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                builds.remove(key);
+            }
+            build.completeExceptionally(e);
+            throw e;
+        }
+        List<PooledClient<C>> evicted = new ArrayList<>();
+        boolean closedMeanwhile;
+        synchronized (this) {
+            builds.remove(key);
+            closedMeanwhile = closed;
+            if (!closed) {
+                clients.put(key, client);
+                PluginMetrics.shared().increment(metric("created"));
+                evictEldest(evicted);
+                lease(client);
+            }
+        }
+        build.complete(null);
+        closeAll(evicted);
+        if (closedMeanwhile) {
+            closeQuietly(client);
+            throw new IllegalStateException(String.format("%s client pool is closed", name));
+        }
+        return client;
+    }
+
+    private void lease(PooledClient<C> client) {
+        client.leases++;
+        client.lastUsedMillis = System.currentTimeMillis();
+        PluginMetrics.shared().gauge(metric("size"), clients.size());
+    }
+
+    public void close() {
+        List<PooledClient<C>> evicted = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            for (PooledClient<C> client : clients.values()) {
+                evict(client, evicted);
+            }
+            clients.clear();
+            PluginMetrics.shared().gauge(metric("size"), 0);
+        }
+        closeAll(evicted);
+    }
+
+    public synchronized int size() {
+        return clients.size();
+    }
+
+    private void release(PooledClient<C> client) {
+        boolean shouldClose;
+        synchronized (this) {
+            client.leases--;
+            client.lastUsedMillis = System.currentTimeMillis();
+            shouldClose = client.evicted && client.leases == 0;
+        }
+        if (shouldClose) {
+            closeQuietly(client);
+        }
+    }
+
+    private void evictIdle(long now, List<PooledClient<C>> evicted) {
+        Iterator<Map.Entry<Key, PooledClient<C>>> iterator = clients.entrySet().iterator();
+        while (iterator.hasNext()) {
+            PooledClient<C> client = iterator.next().getValue();
+            if (client.leases == 0 && now - client.lastUsedMillis > idleTimeoutMillis) {
+                iterator.remove();
+                evict(client, evicted);
+            }
+        }
+    }
+
+    private void evictEldest(List<PooledClient<C>> evicted) {
+        Iterator<Map.Entry<Key, PooledClient<C>>> iterator = clients.entrySet().iterator();
+        while (clients.size() > maxSize && iterator.hasNext()) {
+            PooledClient<C> client = iterator.next().getValue();
+            iterator.remove();
+            evict(client, evicted);
+        }
+    }
+
+    private void evict(PooledClient<C> client, List<PooledClient<C>> evicted) {
+        client.evicted = true;
+        PluginMetrics.shared().increment(metric("evicted"));
+        if (client.leases == 0) {
+            evicted.add(client);
+        }
+    }
+
+    private void closeAll(List<PooledClient<C>> evicted) {
+        for (PooledClient<C> client : evicted) {
+            closeQuietly(client);
+        }
+    }
+
+    private void closeQuietly(PooledClient<C> client) {
+        try {
+            closer.close(client.api);
+        } catch (Exception e) {
+            LOG.warn(String.format("Failed to close %s client. %s", name, e.getMessage()), e);
+        }
+    }
+
+    private String metric(String metric) {
+        return String.format("%s.client-pool.%s", name, metric);
+    }
+
+    public interface Closer<C> {
+        void close(C client) throws Exception;
+    }
+
+    public class Lease implements AutoCloseable {
+        private final PooledClient<C> client;
+        private boolean released;
+
+        private Lease(PooledClient<C> client) {
+            this.client = client;
+        }
+
+        public C api() {
+            return client.api;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(client);
+            }
+        }
+    }
+
+    private static class PooledClient<C> {
+        private final C api;
+        private int leases;
+        private long lastUsedMillis;
+        private boolean evicted;
+
+        private PooledClient(C api) {
+            this.api = api;
+        }
+    }
+
+    private static class Key {
+        private final String serverUrl;
+        private final String credentials;
+
+        private Key(String serverUrl, String credentials) {
+            this.serverUrl = serverUrl;
+            this.credentials = credentials;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(serverUrl, key.serverUrl) && Objects.equals(credentials, key.credentials);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(serverUrl, credentials);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package in.ashwanthkumar.gocd.github.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Small thread-safe LRU cache whose entries expire after a fixed time to live.
+ * Hits and misses are exported as {@code cache.<name>.hit} and {@code cache.<name>.miss} counters.
+ */
+public class ExpiringCache<K, V> {
+    private final String name;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final Map<K, Entry<V>> entries;
+
+    public ExpiringCache(String name, int maxSize, long ttlMillis) {
+        this(name, maxSize, ttlMillis, System::currentTimeMillis);
+    }
+
+    ExpiringCache(String name, final int maxSize, long ttlMillis, LongSupplier clock) {
+        this.name = name;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.expiresAtMillis <= clock.getAsLong()) {
+            entries.remove(key);
+            entry = null;
+        }
+        PluginMetrics.shared().increment(String.format("cache.%s.%s", name, entry == null ? "miss" : "hit"));
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Returns the cached value like {@link #get(Object)}, but without counting the lookup as a hit or miss; for
+     * housekeeping that is not a use of the cache.
+     */
+    public synchronized V peek(K key) {
+        Entry<V> entry = entries.get(key);
+        return entry == null || entry.expiresAtMillis <= clock.getAsLong() ? null : entry.value;
+    }
+
+    /**
+     * Returns the cached value, or loads and caches it. The loader runs outside the lock, so concurrent
+     * callers may load the same key twice; null values are not cached.
+     */
+    public V get(K key, Function<K, V> loader) {
+        V value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, clock.getAsLong() + ttlMillis));
+    }
+
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expiresAtMillis;
+
+        private Entry(V value, long expiresAtMillis) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
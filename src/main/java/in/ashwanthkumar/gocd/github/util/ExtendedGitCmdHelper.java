@@ -1,25 +1,590 @@
 package in.ashwanthkumar.gocd.github.util;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import com.tw.go.plugin.cmd.Console;
 import com.tw.go.plugin.cmd.ProcessOutputStreamConsumer;
 import com.tw.go.plugin.git.GitCmdHelper;
 import com.tw.go.plugin.model.GitConfig;
+import com.tw.go.plugin.model.Revision;
+import in.ashwanthkumar.gocd.github.provider.MaterialContext;
 import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.DefaultExecutor;
+import org.apache.commons.exec.ExecuteWatchdog;
+import org.apache.commons.exec.LogOutputStream;
+import org.apache.commons.exec.PumpStreamHandler;
+import org.apache.commons.io.FileUtils;
 
 public class ExtendedGitCmdHelper extends GitCmdHelper {
+    private final GitConfig config;
+    private final String cloneFilter;
 
     public ExtendedGitCmdHelper(GitConfig gitConfig, File workingDir) {
         super(gitConfig, workingDir);
+        this.config = gitConfig;
+        this.cloneFilter = MaterialContext.cloneFilterOf(gitConfig);
     }
 
     public ExtendedGitCmdHelper(GitConfig gitConfig, File workingDir, ProcessOutputStreamConsumer stdOut,
             ProcessOutputStreamConsumer stdErr) {
         super(gitConfig, workingDir, stdOut, stdErr);
+        this.config = gitConfig;
+        this.cloneFilter = MaterialContext.cloneFilterOf(gitConfig);
+    }
+
+    /**
+     * With a partial clone filter a missing repository is created empty and then fetched with the filter, instead
+     * of being cloned in full. Objects left out are fetched lazily by git when a command needs them.
+     */
+    @Override
+    public void cloneOrFetch(String refSpec) {
+        if (cloneFilter != null && !isRepositoryPresent()) {
+            initRepository();
+        }
+        super.cloneOrFetch(refSpec);
+    }
+
+    /**
+     * Fetch like {@link GitCmdHelper#fetch(String)}, but killed when the running phase of the poll runs out of time.
+     */
+    @Override
+    public void fetch(String refSpec) {
+        if (PollDeadline.running() == null && cloneFilter == null) {
+            super.fetch(refSpec);
+            return;
+        }
+        stdOut.consumeLine("[GIT] Fetching changes");
+        List<String> args = new ArrayList<>(Arrays.asList("fetch", "origin", "--prune", "--recurse-submodules=no"));
+        if (cloneFilter != null) {
+            args.add("--filter=" + cloneFilter);
+        }
+        if (refSpec != null && !refSpec.isEmpty()) {
+            args.add(refSpec);
+        }
+        runWithinDeadline(Console.createCommand(args.toArray(new String[0])));
+    }
+
+    /**
+     * Clone like {@link GitCmdHelper#cloneRepository()}, but killed when the running phase of the poll runs out of
+     * time.
+     */
+    @Override
+    public void cloneRepository() {
+        if (PollDeadline.running() == null) {
+            super.cloneRepository();
+            return;
+        }
+        List<String> args = new ArrayList<>(Arrays.asList("clone", "--branch=" + config.getEffectiveBranch()));
+        if (config.isShallowClone()) {
+            args.add("--depth=1");
+        }
+        args.add(config.getEffectiveUrl());
+        args.add(workingDir.getAbsolutePath());
+        workingDir.mkdirs();
+        runWithinDeadline(Console.createCommand(args.toArray(new String[0])));
+    }
+
+    /**
+     * Update submodules like {@link GitCmdHelper#submoduleUpdate()}, but killed when the running phase of the poll
+     * runs out of time.
+     */
+    @Override
+    public void submoduleUpdate() {
+        if (PollDeadline.running() == null) {
+            super.submoduleUpdate();
+            return;
+        }
+        runWithinDeadline(Console.createCommand("submodule", "update"));
+    }
+
+    public boolean isRepositoryPresent() {
+        return new File(workingDir, ".git").isDirectory();
+    }
+
+    /**
+     * Create an empty repository pointing at the material's URL, so single refs can be fetched into it without
+     * cloning the whole repository first.
+     */
+    public void initRepository() {
+        workingDir.mkdirs();
+        Console.runOrBomb(Console.createCommand("init"), workingDir, stdOut, stdErr);
+        Console.runOrBomb(Console.createCommand("remote", "add", "origin", config.getEffectiveUrl()), workingDir,
+                stdOut, stdErr);
+    }
+
+    /**
+     * Let the repository use the objects of the given shared cache through git alternates. A repository that
+     * borrowed from an earlier incarnation of the cache may miss objects and is created again.
+     */
+    public void borrowObjectsFrom(File cacheRepository, String cacheId) {
+        File gitDir = new File(workingDir, ".git");
+        File cacheIdFile = new File(gitDir, "gocd-shared-cache-id");
+        try {
+            if (cacheIdFile.isFile() && !FileUtils.readFileToString(cacheIdFile, StandardCharsets.UTF_8).equals(cacheId)) {
+                stdOut.consumeLine("[GIT] Shared object cache was recreated, cloning again");
+                FileUtils.deleteDirectory(gitDir);
+            }
+            if (!isRepositoryPresent()) {
+                initRepository();
+            }
+            FileUtils.writeStringToFile(new File(gitDir, "objects/info/alternates"),
+                    new File(cacheRepository, "objects").getAbsolutePath() + "\n", StandardCharsets.UTF_8);
+            FileUtils.writeStringToFile(cacheIdFile, cacheId, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Could not borrow objects from %s", cacheRepository), e);
+        }
+    }
+
+    /**
+     * Revision checked out in the working copy when it can be updated in place: the repository exists, its HEAD
+     * resolves to a commit and no git process died in it leaving the index locked. Null otherwise.
+     */
+    public String reusableCheckoutRevision() {
+        if (!isRepositoryPresent() || new File(workingDir, ".git/index.lock").exists()) {
+            return null;
+        }
+        return output("rev-parse", "--verify", "-q", "HEAD^{commit}");
+    }
+
+    /**
+     * Point the branch at the revision and check it out in one go. Only files that differ between the current
+     * checkout and the revision are written; local changes to tracked files are discarded like by a hard reset.
+     */
+    public void switchTo(String branchName, String revision) {
+        CommandLine gitCheckout = Console.createCommand("checkout", "-f", "-B", branchName, revision);
+        Console.runOrBomb(gitCheckout, workingDir, stdOut, stdErr);
+    }
+
+    /**
+     * Let git cache untracked directories and refresh the index on several threads, which keeps status checks
+     * and resets fast on working copies with many files.
+     */
+    public void enableFastIndexUpdates() {
+        if ("true".equals(output("config", "--get", "core.untrackedCache"))) {
+            return;
+        }
+        Console.runOrBomb(Console.createCommand("config", "core.preloadIndex", "true"), workingDir, stdOut, stdErr);
+        Console.runOrBomb(Console.createCommand("config", "index.threads", "true"), workingDir, stdOut, stdErr);
+        Console.runOrBomb(Console.createCommand("config", "core.untrackedCache", "true"), workingDir, stdOut, stdErr);
+    }
+
+    /**
+     * Whether the submodules have to be updated to move from one revision to the other: they were never updated
+     * at the first revision, or a gitlink or .gitmodules differs between the two.
+     */
+    public boolean submodulesChanged(String fromRevision, String toRevision) {
+        File submodulesUpdatedAt = submodulesUpdatedAtFile();
+        try {
+            if (!submodulesUpdatedAt.isFile()
+                    || !FileUtils.readFileToString(submodulesUpdatedAt, StandardCharsets.UTF_8).equals(fromRevision)) {
+                return true;
+            }
+        } catch (IOException e) {
+            return true;
+        }
+        CommandLine gitDiff = Console.createCommand("diff", "--raw", "--no-renames", fromRevision, toRevision);
+        for (String line : Console.runOrBomb(gitDiff, workingDir, stdOut, stdErr).stdOut()) {
+            if (line.startsWith(":160000") || line.contains(" 160000 ") || line.endsWith("\t.gitmodules")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Update the submodules like {@link #submoduleUpdate()}, with git cloning and fetching up to the given number of
+     * them in parallel. Submodules are fetched with depth 1 when the material is a shallow clone (falling back to a
+     * full fetch when the server refuses), otherwise as shallow as .gitmodules recommends. With a cache, a submodule
+     * cloned for the first time takes what it can from the agent's shared repository for its URL and copies those
+     * objects, so it keeps working once the cache is evicted. Returns, by path, how long after the start of the
+     * update each submodule was checked out; submodules already at their revision are left out.
+     */
+    public Map<String, Long> updateSubmodules(int jobs, SharedObjectCache cache) {
+        Map<String, String> pathsByName = submodulePaths();
+        if (pathsByName.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Console.runOrBomb(Console.createCommand("submodule", "sync"), workingDir, stdOut, stdErr);
+        Console.runOrBomb(Console.createCommand("submodule", "init"), workingDir, stdOut, stdErr);
+        long startMillis = System.currentTimeMillis();
+        Map<String, Long> millisByPath = new TreeMap<>();
+        List<String> paths = new ArrayList<>();
+        for (Map.Entry<String, String> submodule : pathsByName.entrySet()) {
+            String url = cache == null ? null : output("config", "--get", "submodule." + submodule.getKey() + ".url");
+            if (url != null && !new File(workingDir, ".git/modules/" + submodule.getKey()).isDirectory()) {
+                // the reference differs per submodule, those cloned from the cache are updated one by one
+                cache.withLock(url, () -> {
+                    File reference = cache.update(new GitConfig(url), "+refs/heads/*:refs/heads/*");
+                    updateSubmodules(Collections.singletonList(submodule.getValue()), 1, reference,
+                            new SubmoduleProgress(stdOut, startMillis, millisByPath));
+                    return null;
+                });
+            } else {
+                paths.add(submodule.getValue());
+            }
+        }
+        if (!paths.isEmpty()) {
+            updateSubmodules(paths, jobs, null, new SubmoduleProgress(stdOut, startMillis, millisByPath));
+        }
+        return millisByPath;
+    }
+
+    private Map<String, String> submodulePaths() {
+        if (!new File(workingDir, ".gitmodules").isFile()) {
+            return new HashMap<>();
+        }
+        return submodulePathsOf(output("config", "-z", "-f", ".gitmodules", "--get-regexp", "^submodule\\..*\\.path$"));
+    }
+
+    /**
+     * Paths by submodule name from the output of git config -z, where every entry is the key and the value separated
+     * by a newline and entries end with a NUL, so names and paths may hold spaces.
+     */
+    static Map<String, String> submodulePathsOf(String configOutput) {
+        Map<String, String> pathsByName = new HashMap<>();
+        if (configOutput == null) {
+            return pathsByName;
+        }
+        for (String entry : configOutput.split("\0")) {
+            int separator = entry.indexOf('\n');
+            if (separator > 0 && entry.startsWith("submodule.") && entry.substring(0, separator).endsWith(".path")) {
+                pathsByName.put(entry.substring("submodule.".length(), separator - ".path".length()),
+                        entry.substring(separator + 1));
+            }
+        }
+        return pathsByName;
+    }
+
+    private void updateSubmodules(List<String> paths, int jobs, File reference, SubmoduleProgress progress) {
+        if (config.isShallowClone() && runSubmoduleUpdate(paths, jobs, reference, progress, "--depth", "1") == 0) {
+            return;
+        }
+        if (runSubmoduleUpdate(paths, jobs, reference, progress, "--recommend-shallow") != 0) {
+            throw new RuntimeException(String.format("Could not update submodules %s", String.join(", ", paths)));
+        }
+    }
+
+    private int runSubmoduleUpdate(List<String> paths, int jobs, File reference, SubmoduleProgress progress,
+            String... depthArgs) {
+        List<String> args = new ArrayList<>(Arrays.asList("submodule", "update", "--jobs", String.valueOf(jobs)));
+        if (config.isRecursiveSubModuleUpdate()) {
+            args.add("--recursive");
+        }
+        args.addAll(Arrays.asList(depthArgs));
+        if (reference != null) {
+            args.add("--reference");
+            args.add(reference.getAbsolutePath());
+            args.add("--dissociate");
+        }
+        args.add("--");
+        args.addAll(paths);
+        CommandLine gitSubmoduleUpdate = Console.createCommand(args.toArray(new String[0]));
+        try {
+            return execute(gitSubmoduleUpdate, null, progress, lines(stdErr), true);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error performing command: %s", gitSubmoduleUpdate), e);
+        }
+    }
+
+    /**
+     * Passes on the output of git submodule update and notes when each submodule was checked out.
+     */
+    private static class SubmoduleProgress extends LogOutputStream {
+        private static final Pattern CHECKED_OUT = Pattern.compile("^Submodule path '(.+)': checked out '[0-9a-f]+'$");
+
+        private final ProcessOutputStreamConsumer consumer;
+        private final long startMillis;
+        private final Map<String, Long> millisByPath;
+
+        SubmoduleProgress(ProcessOutputStreamConsumer consumer, long startMillis, Map<String, Long> millisByPath) {
+            this.consumer = consumer;
+            this.startMillis = startMillis;
+            this.millisByPath = millisByPath;
+        }
+
+        @Override
+        protected void processLine(String line, int level) {
+            consumer.consumeLine(line);
+            Matcher checkedOut = CHECKED_OUT.matcher(line);
+            if (checkedOut.matches()) {
+                millisByPath.put(checkedOut.group(1), System.currentTimeMillis() - startMillis);
+            }
+        }
+    }
+
+    public void markSubmodulesUpdatedAt(String revision) {
+        try {
+            FileUtils.writeStringToFile(submodulesUpdatedAtFile(), revision, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Could not write %s", submodulesUpdatedAtFile()), e);
+        }
+    }
+
+    private File submodulesUpdatedAtFile() {
+        return new File(workingDir, ".git/gocd-submodules-updated-at");
+    }
+
+    /**
+     * Commits reachable from the revision but not from the earlier one, newest first. Unlike
+     * {@link GitCmdHelper#getRevisionsSince(String)} the revision does not have to be checked out, so listing them
+     * leaves the working tree alone and a partial clone does not fetch the blobs of the whole tree.
+     */
+    public List<Revision> getRevisionsBetween(String sinceRevision, String revision) {
+        CommandLine gitRevList = Console.createCommand("rev-list", sinceRevision + ".." + revision);
+        List<Revision> revisions = new ArrayList<>();
+        for (String sha : Console.runOrBomb(gitRevList, workingDir, stdOut, stdErr).stdOut()) {
+            if (!sha.trim().isEmpty()) {
+                revisions.add(getDetailsForRevision(sha.trim()));
+            }
+        }
+        return revisions;
+    }
+
+    /**
+     * Whether the commit is already in the local object store.
+     */
+    public boolean hasRevision(String revision) {
+        if (!isRepositoryPresent()) {
+            return false;
+        }
+        return quietly("cat-file", "-e", revision + "^{commit}") == 0;
+    }
+
+    /**
+     * Fetch a single ref spec or SHA from origin, with the given depth when it is positive. Returns false instead of
+     * failing when git rejects it, e.g. when the server does not allow fetching a SHA that is not a ref tip.
+     */
+    public boolean fetchOnly(String refSpecOrRevision, int depth) {
+        List<String> args = new ArrayList<>(Arrays.asList("fetch", "origin", "--recurse-submodules=no"));
+        if (depth > 0) {
+            args.add("--depth=" + depth);
+        }
+        if (cloneFilter != null) {
+            args.add("--filter=" + cloneFilter);
+        }
+        args.add(refSpecOrRevision);
+        stdOut.consumeLine(String.format("[GIT] Fetching %s", refSpecOrRevision));
+        CommandLine gitFetch = Console.createCommand(args.toArray(new String[0]));
+        try {
+            return execute(gitFetch, null, lines(stdOut), lines(stdErr), true) == 0;
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error performing command: %s", gitFetch), e);
+        }
+    }
+
+    /**
+     * Limit the working tree to the given directories, or bring back the whole tree when there are none and an
+     * earlier checkout was sparse. Takes effect with the next reset, {@link #updateSparseWorkingTree()} makes sure
+     * files that were checked out before are dropped as well.
+     */
+    public void applySparseCheckout(List<String> paths) {
+        File sparseCheckoutFile = sparseCheckoutFile();
+        if (paths.isEmpty() && !sparseCheckoutFile.exists()) {
+            return;
+        }
+        Console.runOrBomb(Console.createCommand("config", "core.sparseCheckout", "true"), workingDir, stdOut, stdErr);
+        try {
+            FileUtils.writeLines(sparseCheckoutFile, StandardCharsets.UTF_8.name(),
+                    paths.isEmpty() ? Collections.singletonList("/*") : sparseCheckoutPatterns(paths), "\n");
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Could not write %s", sparseCheckoutFile), e);
+        }
+    }
+
+    public void updateSparseWorkingTree() {
+        if (sparseCheckoutFile().exists()) {
+            Console.runOrBomb(Console.createCommand("read-tree", "-mu", "HEAD"), workingDir, stdOut, stdErr);
+        }
+    }
+
+    private File sparseCheckoutFile() {
+        return new File(workingDir, ".git/info/sparse-checkout");
+    }
+
+    /**
+     * Patterns in the format of git's cone mode: the files at the top and in every parent of a path, and
+     * everything below each path.
+     */
+    static List<String> sparseCheckoutPatterns(List<String> paths) {
+        Set<String> patterns = new LinkedHashSet<>(Arrays.asList("/*", "!/*/"));
+        for (String path : paths) {
+            if (paths.stream().anyMatch(other -> path.startsWith(other + "/"))) {
+                continue;
+            }
+            String[] segments = path.split("/");
+            StringBuilder parent = new StringBuilder("/");
+            for (int i = 0; i < segments.length - 1; i++) {
+                parent.append(segments[i]).append('/');
+                patterns.add(parent.toString());
+                patterns.add("!" + parent + "*/");
+            }
+            patterns.add("/" + path + "/");
+        }
+        return new ArrayList<>(patterns);
+    }
+
+    /**
+     * Write a bundle with the commits of the revision that are not reachable from any of the given basis revisions
+     * or refs; those missing from the repository are left out. Returns false when there is nothing to bundle, e.g.
+     * when none of the basis is known and the bundle would hold the whole history.
+     */
+    public boolean createBundle(File bundle, String revision, List<String> basis) {
+        List<String> knownBasis = new ArrayList<>();
+        for (String base : basis) {
+            if (base != null && output("rev-parse", "--verify", "-q", base + "^{commit}") != null) {
+                knownBasis.add(base);
+            }
+        }
+        if (knownBasis.isEmpty()) {
+            return false;
+        }
+        String bundleRef = bundleRefOf(revision);
+        Console.runOrBomb(Console.createCommand("update-ref", bundleRef, revision), workingDir, stdOut, stdErr);
+        try {
+            List<String> args = new ArrayList<>(Arrays.asList("bundle", "create", bundle.getAbsolutePath(), bundleRef,
+                    "--not"));
+            args.addAll(knownBasis);
+            CommandLine gitBundle = Console.createCommand(args.toArray(new String[0]));
+            return executeWithinDeadline(gitBundle, new ByteArrayOutputStream(), new ByteArrayOutputStream(), true) == 0
+                    && bundle.isFile();
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Could not write bundle %s", bundle), e);
+        } finally {
+            quietly("update-ref", "-d", bundleRef);
+        }
+    }
+
+    /**
+     * Fetch the revision from a bundle written by {@link #createBundle(File, String, List)}. Returns false when the
+     * repository lacks the commits the bundle builds on.
+     */
+    public boolean fetchFromBundle(File bundle, String revision) {
+        if (!isRepositoryPresent() || quietly("bundle", "verify", bundle.getAbsolutePath()) != 0) {
+            return false;
+        }
+        stdOut.consumeLine(String.format("[GIT] Fetching %s from bundle %s", revision, bundle));
+        return quietly("fetch", "--no-tags", bundle.getAbsolutePath(), bundleRefOf(revision)) == 0
+                && hasRevision(revision);
+    }
+
+    private static String bundleRefOf(String revision) {
+        return "refs/gocd-bundle/" + revision;
+    }
+
+    /**
+     * Size of the local object store in bytes, loose objects and packs together, as reported by git count-objects.
+     */
+    public long objectStoreSize() {
+        if (!isRepositoryPresent()) {
+            return 0;
+        }
+        List<String> outputLines = Console.runOrBomb(Console.createCommand("count-objects", "-v"), workingDir,
+                stdOut, stdErr).stdOut();
+        long kibibytes = 0;
+        for (String line : outputLines) {
+            if (line.startsWith("size:") || line.startsWith("size-pack:")) {
+                kibibytes += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+            }
+        }
+        return kibibytes * 1024;
+    }
+
+    private String output(String... args) {
+        CommandLine command = Console.createCommand(args);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            int exitValue = execute(command, null, out, new ByteArrayOutputStream(), true);
+            return exitValue == 0 ? new String(out.toByteArray(), StandardCharsets.UTF_8).trim() : null;
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error performing command: %s", command), e);
+        }
+    }
+
+    private int quietly(String... args) {
+        CommandLine command = Console.createCommand(args);
+        try {
+            return execute(command, null, new ByteArrayOutputStream(), new ByteArrayOutputStream(), true);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error performing command: %s", command), e);
+        }
+    }
+
+    private void runWithinDeadline(CommandLine command) {
+        try {
+            executeWithinDeadline(command, lines(stdOut), lines(stdErr), false);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error performing command: %s", command), e);
+        }
+    }
+
+    /**
+     * Execute the command, killing it when the phase of the poll running on this thread runs out of time.
+     *
+     * @throws PollTimeoutException when the command was killed
+     */
+    private int executeWithinDeadline(CommandLine command, OutputStream out, OutputStream err, boolean anyExitValue)
+            throws IOException {
+        PollDeadline.RunningPhase running = PollDeadline.running();
+        if (running == null) {
+            return execute(command, null, out, err, anyExitValue);
+        }
+        long timeoutMillis = running.getRemainingMillis();
+        ExecuteWatchdog watchdog = new ExecuteWatchdog(timeoutMillis);
+        try {
+            int exitValue = execute(command, watchdog, out, err, anyExitValue);
+            if (watchdog.killedProcess()) {
+                throw killed(command, running, timeoutMillis);
+            }
+            return exitValue;
+        } catch (IOException e) {
+            if (watchdog.killedProcess()) {
+                throw killed(command, running, timeoutMillis);
+            }
+            throw e;
+        }
+    }
+
+    private PollTimeoutException killed(CommandLine command, PollDeadline.RunningPhase running, long timeoutMillis) {
+        return new PollTimeoutException(running.getPhase(), String.format("git %s in %s killed after %dms",
+                command.getArguments()[0], workingDir, timeoutMillis));
+    }
+
+    private int execute(CommandLine command, ExecuteWatchdog watchdog, OutputStream out, OutputStream err,
+            boolean anyExitValue) throws IOException {
+        DefaultExecutor executor = new DefaultExecutor();
+        executor.setWorkingDirectory(workingDir);
+        if (watchdog != null) {
+            executor.setWatchdog(watchdog);
+        }
+        if (anyExitValue) {
+            executor.setExitValues(null);
+        }
+        executor.setStreamHandler(new PumpStreamHandler(out, err));
+        return executor.execute(command);
+    }
+
+    private static LogOutputStream lines(ProcessOutputStreamConsumer consumer) {
+        return new LogOutputStream() {
+            @Override
+            protected void processLine(String line, int level) {
+                consumer.consumeLine(line);
+            }
+        };
     }
 
     public void checkoutNewBranch(String branchName) {
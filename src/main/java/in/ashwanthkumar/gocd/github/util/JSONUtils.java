@@ -1,22 +1,54 @@
 package in.ashwanthkumar.gocd.github.util;
 
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * JSON codec of the plugin. {@link Gson} is thread-safe and caches the type adapters it builds, so a single
+ * instance is shared by all requests.
+ */
 public class JSONUtils {
+    private static final Gson GSON = new GsonBuilder().create();
+
     public static Object fromJSON(String json) {
-        return new GsonBuilder().create().fromJson(json, Object.class);
+        return GSON.fromJson(json, Object.class);
     }
 
     public static <T> T fromJSON(String json, Class<T> type) {
-        return new GsonBuilder().create().fromJson(json, type);
+        return GSON.fromJson(json, type);
     }
 
     public static <T> T fromJSON(String json, TypeToken<T> typeToken) {
-        return new GsonBuilder().create().fromJson(json, typeToken.getType());
+        return GSON.fromJson(json, typeToken.getType());
+    }
+
+    /**
+     * Parse JSON with a hand-written adapter such as the one of {@code ScmRequest}, as leniently as the other methods.
+     */
+    public static <T> T fromJSON(String json, TypeAdapter<T> adapter) {
+        if (json == null) {
+            return null;
+        }
+        JsonReader reader = new JsonReader(new StringReader(json));
+        reader.setLenient(true);
+        try {
+            return adapter.read(reader);
+        } catch (IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
     }
 
     public static String toJSON(Object object) {
-        return new GsonBuilder().create().toJson(object);
+        return GSON.toJson(object);
     }
 }
@@ -0,0 +1,92 @@
+package in.ashwanthkumar.gocd.github.util;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide registry of counters and gauges exported by the plugin.
+ * Counters only ever go up, gauges hold the last value that was set.
+ * <p>
+ * The plugin API has no way to serve metrics, so they are exported to the plugin log: every
+ * {@value #LOG_INTERVAL_PROPERTY} minutes (5 by default, 0 turns it off) one line with all of them is logged.
+ */
+public class PluginMetrics {
+    private static final Logger LOG = Logger.getLoggerFor(PluginMetrics.class);
+
+    public static final String LOG_INTERVAL_PROPERTY = "go.plugin.metrics.log-interval-minutes";
+
+    private static final PluginMetrics INSTANCE = new PluginMetrics();
+
+    static {
+        INSTANCE.logEvery(TimeUnit.MINUTES.toMillis(Long.getLong(LOG_INTERVAL_PROPERTY, 5L)));
+    }
+
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> gauges = new ConcurrentHashMap<>();
+
+    public static PluginMetrics shared() {
+        return INSTANCE;
+    }
+
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    public void add(String name, long delta) {
+        counters.computeIfAbsent(name, key -> new AtomicLong()).addAndGet(delta);
+    }
+
+    public void gauge(String name, long value) {
+        gauges.computeIfAbsent(name, key -> new AtomicLong()).set(value);
+    }
+
+    public long counter(String name) {
+        AtomicLong counter = counters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    public Long gauge(String name) {
+        AtomicLong gauge = gauges.get(name);
+        return gauge == null ? null : gauge.get();
+    }
+
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counters.forEach((name, value) -> snapshot.put(name, value.get()));
+        gauges.forEach((name, value) -> snapshot.put(name, value.get()));
+        return snapshot;
+    }
+
+    /**
+     * The line logged with all metrics, or null when nothing was recorded yet.
+     */
+    String report() {
+        Map<String, Long> snapshot = snapshot();
+        return snapshot.isEmpty() ? null : "Plugin metrics: " + snapshot;
+    }
+
+    private void logEvery(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            return;
+        }
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "plugin-metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> {
+            String report = report();
+            if (report != null) {
+                LOG.info(report);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+}
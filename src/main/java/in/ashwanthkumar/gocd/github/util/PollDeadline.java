@@ -0,0 +1,178 @@
+package in.ashwanthkumar.gocd.github.util;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * End-to-end time budget of a single poll of a material, split over its phases. Every phase gets what is left of
+ * the poll's budget, capped by its own budget if one is configured; a phase does not start once the poll is out of
+ * time. While a phase runs, git subprocesses started on its thread are killed and provider API calls made on its
+ * thread time out when the phase runs out of time, see {@link #running()} and {@link #clientTimeoutMillis()}.
+ * Enrichment is waited for only until it runs out; in-process work is only measured against the budget.
+ * Time spent per phase is exported as {@code poll.<phase>.millis} counters and {@code poll.<phase>.last-millis}
+ * gauges.
+ */
+public class PollDeadline {
+    private static final Logger LOG = Logger.getLoggerFor(PollDeadline.class);
+
+    public static final String BUDGET_PROPERTY = "go.plugin.poll.budget-ms";
+
+    public enum Phase {
+        FETCH("fetch"), REF_SCAN("ref-scan"), FILTER("filter"), ENRICHMENT("enrichment"), BUNDLE("bundle");
+
+        private final String name;
+
+        Phase(String name) {
+            this.name = name;
+        }
+
+        public String getBudgetProperty() {
+            return String.format("go.plugin.poll.%s.budget-ms", name);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final long DEFAULT_BUDGET_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final ThreadLocal<RunningPhase> RUNNING = new ThreadLocal<>();
+
+    private final String material;
+    private final long deadlineMillis;
+    private final Map<Phase, Long> phaseBudgets;
+    private final LongSupplier clock;
+    private final Map<Phase, Long> timings = new EnumMap<>(Phase.class);
+
+    PollDeadline(String material, long budgetMillis, Map<Phase, Long> phaseBudgets, LongSupplier clock) {
+        this.material = material;
+        this.deadlineMillis = clock.getAsLong() + budgetMillis;
+        this.phaseBudgets = phaseBudgets;
+        this.clock = clock;
+    }
+
+    /**
+     * Start the clock for a poll of the given material, with the budgets configured through system properties.
+     */
+    public static PollDeadline start(String material) {
+        Map<Phase, Long> phaseBudgets = new EnumMap<>(Phase.class);
+        for (Phase phase : Phase.values()) {
+            Long budget = Long.getLong(phase.getBudgetProperty());
+            if (budget != null) {
+                phaseBudgets.put(phase, budget);
+            }
+        }
+        return new PollDeadline(material, budgetMillis(), phaseBudgets,
+                System::currentTimeMillis);
+    }
+
+    /**
+     * Time the given phase may still take, never negative.
+     */
+    public long remainingFor(Phase phase) {
+        long remaining = Math.max(0, deadlineMillis - clock.getAsLong());
+        Long phaseBudget = phaseBudgets.get(phase);
+        return phaseBudget == null ? remaining : Math.min(remaining, phaseBudget);
+    }
+
+    public void run(Phase phase, Runnable work) {
+        run(phase, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Run a phase of the poll and record its timing.
+     *
+     * @throws PollTimeoutException when the poll ran out of time before the phase could start
+     */
+    public <T> T run(Phase phase, Supplier<T> work) {
+        if (remainingFor(phase) == 0) {
+            throw timedOut(phase);
+        }
+        long startMillis = clock.getAsLong();
+        RunningPhase outer = RUNNING.get();
+        RUNNING.set(new RunningPhase(phase));
+        try {
+            return work.get();
+        } finally {
+            RUNNING.set(outer);
+            long elapsedMillis = clock.getAsLong() - startMillis;
+            timings.merge(phase, elapsedMillis, Long::sum);
+            PluginMetrics.shared().add(String.format("poll.%s.millis", phase), elapsedMillis);
+            PluginMetrics.shared().gauge(String.format("poll.%s.last-millis", phase), elapsedMillis);
+            Long phaseBudget = phaseBudgets.get(phase);
+            if (phaseBudget != null && elapsedMillis > phaseBudget) {
+                LOG.warn(String.format("Poll of %s spent %dms in %s, over its budget of %dms", material, elapsedMillis,
+                        phase, phaseBudget));
+            }
+        }
+    }
+
+    /**
+     * Configured budget of a whole poll.
+     */
+    public static long budgetMillis() {
+        return Long.getLong(BUDGET_PROPERTY, DEFAULT_BUDGET_MILLIS);
+    }
+
+    /**
+     * The phase of a poll running on the current thread, null when there is none.
+     */
+    public static RunningPhase running() {
+        return RUNNING.get();
+    }
+
+    /**
+     * Connect and read timeout for a provider API call made on the current thread: what is left of the running
+     * phase, or the default poll budget when the call is not part of a poll (e.g. background enrichment).
+     */
+    public static int clientTimeoutMillis() {
+        RunningPhase running = RUNNING.get();
+        long timeoutMillis = running == null ? budgetMillis() : running.getRemainingMillis();
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, timeoutMillis));
+    }
+
+    private PollTimeoutException timedOut(Phase phase) {
+        return new PollTimeoutException(phase, String.format("Poll of %s ran out of time before %s phase", material, phase));
+    }
+
+    public Map<Phase, Long> getTimings() {
+        return new EnumMap<>(timings);
+    }
+
+    public class RunningPhase {
+        private final Phase phase;
+
+        private RunningPhase(Phase phase) {
+            this.phase = phase;
+        }
+
+        public Phase getPhase() {
+            return phase;
+        }
+
+        /**
+         * Time the phase may still take, at least 1ms, so it can be used as a timeout where 0 means none.
+         */
+        public long getRemainingMillis() {
+            return Math.max(1, remainingFor(phase));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return timings.entrySet().stream()
+                .map(entry -> String.format("%s=%dms", entry.getKey(), entry.getValue()))
+                .collect(joining(", "));
+    }
+}
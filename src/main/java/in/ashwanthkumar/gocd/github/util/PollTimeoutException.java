@@ -0,0 +1,17 @@
+package in.ashwanthkumar.gocd.github.util;
+
+/**
+ * Thrown when a poll runs out of its time budget.
+ */
+public class PollTimeoutException extends RuntimeException {
+    private final PollDeadline.Phase phase;
+
+    public PollTimeoutException(PollDeadline.Phase phase, String message) {
+        super(message);
+        this.phase = phase;
+    }
+
+    public PollDeadline.Phase getPhase() {
+        return phase;
+    }
+}
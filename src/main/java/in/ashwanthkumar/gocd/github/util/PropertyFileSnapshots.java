@@ -0,0 +1,90 @@
+package in.ashwanthkumar.gocd.github.util;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parsed contents of the credential property files in the user's home ({@code ~/.github}, {@code ~/.gitlab},
+ * {@code ~/.bitbucket}), shared by all providers. A file is read again only when its modification time or size
+ * changed since it was last parsed; reloads are counted per instance and exported as the
+ * {@code property-file.reloads} counter.
+ */
+public class PropertyFileSnapshots {
+    private static final PropertyFileSnapshots INSTANCE = new PropertyFileSnapshots();
+
+    private final ConcurrentMap<File, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final AtomicLong reloads = new AtomicLong();
+
+    PropertyFileSnapshots() {
+    }
+
+    public static PropertyFileSnapshots shared() {
+        return INSTANCE;
+    }
+
+    /**
+     * Properties of the file with the given name in the user's home.
+     */
+    public Properties inUserHome(String fileName) throws IOException {
+        return get(new File(System.getProperty("user.home"), fileName));
+    }
+
+    /**
+     * A copy of the properties in the given file, parsed again only if the file changed.
+     */
+    public Properties get(File file) throws IOException {
+        long lastModified = file.lastModified();
+        long length = file.length();
+        if (lastModified == 0L && !file.exists()) {
+            snapshots.remove(file);
+            throw new FileNotFoundException(file.getPath());
+        }
+
+        Snapshot snapshot = snapshots.get(file);
+        if (snapshot == null || snapshot.lastModified != lastModified || snapshot.length != length) {
+            snapshot = new Snapshot(lastModified, length, load(file));
+            snapshots.put(file, snapshot);
+            reloads.incrementAndGet();
+            PluginMetrics.shared().increment("property-file.reloads");
+        }
+        Properties properties = new Properties();
+        properties.putAll(snapshot.properties);
+        return properties;
+    }
+
+    public long getReloadCount() {
+        return reloads.get();
+    }
+
+    private static Properties load(File file) throws IOException {
+        Properties props = new Properties();
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            props.load(in);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        return props;
+    }
+
+    private static class Snapshot {
+        private final long lastModified;
+        private final long length;
+        private final Properties properties;
+
+        private Snapshot(long lastModified, long length, Properties properties) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.properties = properties;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package in.ashwanthkumar.gocd.github.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Coordinates the requests working on the same local repository, which GoCD sends concurrently for a flyweight
+ * folder and which materials with the same URL share. Reading refs and history takes the read lock of the repository,
+ * changing it (fetch, reset, checkout) takes the write lock, so git never finds the index or a ref locked by another
+ * request. Locks are keyed by the canonical path of the repository.
+ * <p>
+ * Fetches are single-flight: a request asking for the same ref spec of a repository as a fetch that is in flight
+ * waits for that fetch and shares its result instead of fetching again. Time spent waiting is counted in
+ * {@link PluginMetrics}, which logs it with its periodic snapshot, as {@code repository.lock.read.wait-millis},
+ * {@code repository.lock.write.wait-millis} and {@code repository.fetch.coalesced.wait-millis}.
+ */
+public class RepositoryLocks {
+    private static final RepositoryLocks INSTANCE = new RepositoryLocks(System::currentTimeMillis);
+
+    private final LongSupplier clock;
+    private final ConcurrentMap<String, ReentrantReadWriteLock> locks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<Void>> fetches = new ConcurrentHashMap<>();
+
+    RepositoryLocks(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public static RepositoryLocks shared() {
+        return INSTANCE;
+    }
+
+    public <T> T read(File repository, Supplier<T> action) {
+        return locked(lockOf(repository).readLock(), "read", action);
+    }
+
+    public <T> T write(File repository, Supplier<T> action) {
+        return locked(lockOf(repository).writeLock(), "write", action);
+    }
+
+    public void write(File repository, Runnable action) {
+        write(repository, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Run the fetch of the ref spec while holding the write lock of the repository, or, when the same fetch is
+     * already in flight, wait for it to finish and rethrow its failure if it failed. Must not be called while holding
+     * the read lock of the repository.
+     */
+    public void fetch(File repository, String refSpec, Runnable fetch) {
+        String key = keyOf(repository) + " " + refSpec;
+        CompletableFuture<Void> ours = new CompletableFuture<>();
+        CompletableFuture<Void> inFlight = fetches.putIfAbsent(key, ours);
+        if (inFlight != null) {
+            PluginMetrics.shared().increment("repository.fetch.coalesced");
+            long startMillis = clock.getAsLong();
+            try {
+                inFlight.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            } finally {
+                PluginMetrics.shared().add("repository.fetch.coalesced.wait-millis", clock.getAsLong() - startMillis);
+            }
+            return;
+        }
+        try {
+            write(repository, fetch);
+            ours.complete(null);
+        } catch (Throwable t) {
+            ours.completeExceptionally(t);
+            throw t;
+        } finally {
+            fetches.remove(key, ours);
+        }
+    }
+
+    private <T> T locked(Lock lock, String mode, Supplier<T> action) {
+        long startMillis = clock.getAsLong();
+        lock.lock();
+        try {
+            long waitMillis = clock.getAsLong() - startMillis;
+            PluginMetrics.shared().add(String.format("repository.lock.%s.wait-millis", mode), waitMillis);
+            PluginMetrics.shared().gauge(String.format("repository.lock.%s.last-wait-millis", mode), waitMillis);
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantReadWriteLock lockOf(File repository) {
+        return locks.computeIfAbsent(keyOf(repository), key -> new ReentrantReadWriteLock());
+    }
+
+    private static String keyOf(File repository) {
+        try {
+            return repository.getCanonicalPath();
+        } catch (IOException e) {
+            return repository.getAbsolutePath();
+        }
+    }
+}
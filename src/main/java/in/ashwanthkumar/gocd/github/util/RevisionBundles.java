@@ -0,0 +1,127 @@
+package in.ashwanthkumar.gocd.github.util;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Git bundles of triggered PR revisions, kept in a directory the server and the agents share (set with
+ * {@value #DIRECTORY_PROPERTY}, bundles are off without it). When a poll reports a revision the server bundles the
+ * commits of it that are not on the default branch or in the previous revision of the PR, and checkouts fetch the
+ * revision from that bundle before going to the Git host. Bundles older than {@value #MAX_AGE_PROPERTY} hours
+ * (3 days by default) are deleted, for every repository, at most once an hour when a bundle is published or used.
+ */
+public class RevisionBundles {
+    private static final Logger LOG = Logger.getLoggerFor(RevisionBundles.class);
+
+    public static final String DIRECTORY_PROPERTY = "go.plugin.bundle.dir";
+    public static final String MAX_AGE_PROPERTY = "go.plugin.bundle.max-age-hours";
+
+    private static final long SWEEP_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final RevisionBundles INSTANCE = new RevisionBundles(
+            System.getProperty(DIRECTORY_PROPERTY) == null ? null : new File(System.getProperty(DIRECTORY_PROPERTY)),
+            TimeUnit.HOURS.toMillis(Long.getLong(MAX_AGE_PROPERTY, 72L)),
+            System::currentTimeMillis);
+
+    private final File directory;
+    private final long maxAgeMillis;
+    private final LongSupplier clock;
+    private final AtomicLong lastSweepMillis = new AtomicLong();
+
+    RevisionBundles(File directory, long maxAgeMillis, LongSupplier clock) {
+        this.directory = directory;
+        this.maxAgeMillis = maxAgeMillis;
+        this.clock = clock;
+    }
+
+    public static RevisionBundles shared() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    public File bundleFor(String url, String revision) {
+        return new File(new File(directory, URLUtils.directoryNameFor(url)), revision + ".bundle");
+    }
+
+    /**
+     * Bundle the revision from the poll's repository against the given basis and publish it under the material's
+     * URL. Returns the published bundle, or null when there was nothing to publish.
+     */
+    public File publish(ExtendedGitCmdHelper git, String url, String revision, List<String> basis) {
+        File bundle = bundleFor(url, revision);
+        if (bundle.isFile()) {
+            return bundle;
+        }
+        File repositoryDirectory = bundle.getParentFile();
+        repositoryDirectory.mkdirs();
+        File partial = new File(repositoryDirectory, revision + ".bundle.partial");
+        try {
+            if (!git.createBundle(partial, revision, basis)) {
+                return null;
+            }
+            // agents must never see a bundle that is still being written
+            Files.move(partial.toPath(), bundle.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            PluginMetrics.shared().increment("bundle.published");
+            PluginMetrics.shared().add("bundle.bytes", bundle.length());
+            return bundle;
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Could not publish bundle %s", bundle), e);
+        } finally {
+            partial.delete();
+            deleteExpiredPeriodically();
+        }
+    }
+
+    /**
+     * Fetch the revision from its published bundle, if there is one the repository can use.
+     */
+    public boolean seed(ExtendedGitCmdHelper git, String url, String revision) {
+        deleteExpiredPeriodically();
+        File bundle = bundleFor(url, revision);
+        if (!bundle.isFile()) {
+            PluginMetrics.shared().increment("bundle.missing");
+            return false;
+        }
+        boolean seeded = git.fetchFromBundle(bundle, revision);
+        PluginMetrics.shared().increment(seeded ? "bundle.seeded" : "bundle.unusable");
+        return seeded;
+    }
+
+    private void deleteExpiredPeriodically() {
+        long now = clock.getAsLong();
+        long lastSweep = lastSweepMillis.get();
+        if (now - lastSweep >= SWEEP_INTERVAL_MILLIS && lastSweepMillis.compareAndSet(lastSweep, now)) {
+            deleteExpired();
+        }
+    }
+
+    void deleteExpired() {
+        File[] repositoryDirectories = directory.listFiles(File::isDirectory);
+        if (repositoryDirectories == null) {
+            return;
+        }
+        for (File repositoryDirectory : repositoryDirectories) {
+            File[] bundles = repositoryDirectory.listFiles();
+            if (bundles == null) {
+                continue;
+            }
+            for (File bundle : bundles) {
+                if (clock.getAsLong() - bundle.lastModified() > maxAgeMillis && bundle.delete()) {
+                    PluginMetrics.shared().increment("bundle.expired");
+                    LOG.debug(String.format("Deleted expired bundle %s", bundle));
+                }
+            }
+        }
+    }
+}
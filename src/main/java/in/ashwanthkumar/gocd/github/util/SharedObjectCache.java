@@ -0,0 +1,255 @@
+package in.ashwanthkumar.gocd.github.util;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import com.tw.go.plugin.cmd.Console;
+import com.tw.go.plugin.model.GitConfig;
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.DefaultExecutor;
+import org.apache.commons.exec.LogOutputStream;
+import org.apache.commons.exec.PumpStreamHandler;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Bare repositories on the agent, one per material URL, that checkouts borrow objects from through git alternates,
+ * so every pipeline checking out the same repository does not download and store its own copy of the history.
+ * <p>
+ * A cache is only changed while holding its lock, which is both a lock in this JVM and a file lock next to the
+ * repository, so agents sharing a home directory do not update it at the same time. Once the caches together grow
+ * past the size set with {@value #MAX_SIZE_PROPERTY} (10 GB by default), the least recently used ones are deleted;
+ * caches that are locked, were used in the last hour or are still borrowed from by a workspace are kept. A cache
+ * records the workspaces it was lent to, a workspace whose alternates no longer point at the cache (it was deleted or
+ * cloned again) stops counting as a borrower. Sizes are measured when a cache is updated or first seen and kept as a
+ * running total, so eviction does not walk every cache. Every cache has an id that changes when it is created anew,
+ * so a checkout that borrowed from a deleted cache is detected and cloned again.
+ */
+public class SharedObjectCache {
+    private static final Logger LOG = Logger.getLoggerFor(SharedObjectCache.class);
+
+    public static final String DIRECTORY_PROPERTY = "go.plugin.checkout.shared-cache.dir";
+    public static final String MAX_SIZE_PROPERTY = "go.plugin.checkout.shared-cache.max-mb";
+
+    private static final String ID_FILE = "gocd-cache-id";
+    private static final String LAST_USED_FILE = "gocd-last-used";
+    private static final String BORROWERS_DIRECTORY = "gocd-borrowers";
+    private static final long KEEP_RECENTLY_USED_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final SharedObjectCache INSTANCE = new SharedObjectCache(
+            new File(System.getProperty(DIRECTORY_PROPERTY,
+                    new File(System.getProperty("user.home"), ".gocd-git-object-cache").getPath())),
+            Long.getLong(MAX_SIZE_PROPERTY, 10240L) * 1024 * 1024,
+            System::currentTimeMillis);
+
+    private final File root;
+    private final long maxSizeBytes;
+    private final LongSupplier clock;
+    private final ConcurrentMap<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> sizes = new ConcurrentHashMap<>();
+
+    SharedObjectCache(File root, long maxSizeBytes, LongSupplier clock) {
+        this.root = root;
+        this.maxSizeBytes = maxSizeBytes;
+        this.clock = clock;
+    }
+
+    public static SharedObjectCache shared() {
+        return INSTANCE;
+    }
+
+    /**
+     * Location of the bare repository caching the given URL.
+     */
+    public File repositoryFor(String url) {
+        return new File(root, URLUtils.directoryNameFor(url) + ".git");
+    }
+
+    /**
+     * Run the action while holding the lock of the cache for the given URL.
+     */
+    public <T> T withLock(String url, Supplier<T> action) {
+        File repository = repositoryFor(url);
+        ReentrantLock lock = locks.computeIfAbsent(repository.getName(), name -> new ReentrantLock());
+        lock.lock();
+        try (FileChannel channel = openLockFile(repository); FileLock ignored = channel.lock()) {
+            return action.get();
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Could not lock shared object cache %s", repository), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Create the cache of the material if needed and fetch the given ref spec into it. Must be called while holding
+     * the lock of the material's cache.
+     */
+    public File update(GitConfig gitConfig, String refSpec) {
+        File repository = repositoryFor(gitConfig.getUrl());
+        if (!new File(repository, ID_FILE).isFile()) {
+            FileUtils.deleteQuietly(repository);
+            repository.mkdirs();
+            git(repository, "init", "--bare");
+            git(repository, "remote", "add", "origin", gitConfig.getEffectiveUrl());
+            write(new File(repository, ID_FILE), UUID.randomUUID().toString());
+            LOG.info(String.format("Created shared object cache %s for %s", repository, gitConfig.getUrl()));
+        }
+        git(repository, "fetch", "origin", "--prune", "--recurse-submodules=no", refSpec);
+        File lastUsed = new File(repository, LAST_USED_FILE);
+        write(lastUsed, "");
+        lastUsed.setLastModified(clock.getAsLong());
+        sizes.put(repository.getName(), FileUtils.sizeOfDirectory(repository));
+        PluginMetrics.shared().increment("shared-cache.updates");
+        return repository;
+    }
+
+    /**
+     * Record that the workspace borrows objects from the cache in the given repository, so the cache is not evicted
+     * while the workspace still needs it. Must be called while holding the lock of the cache.
+     */
+    public void lendTo(File repository, File workspace) {
+        String path = workspace.getAbsolutePath();
+        write(new File(new File(repository, BORROWERS_DIRECTORY), URLUtils.directoryNameFor(path)), path);
+    }
+
+    /**
+     * Id of the cache in the given repository, it changes every time the cache is created anew.
+     */
+    public String idOf(File repository) {
+        try {
+            return FileUtils.readFileToString(new File(repository, ID_FILE), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Could not read id of shared object cache %s", repository), e);
+        }
+    }
+
+    /**
+     * Delete the least recently used caches until all of them fit in the configured size again.
+     */
+    public void evictBeyondLimit() {
+        File[] repositories = root.listFiles(file -> file.isDirectory() && file.getName().endsWith(".git"));
+        if (repositories == null) {
+            return;
+        }
+        long totalBytes = 0;
+        Set<String> present = new HashSet<>();
+        List<File> candidates = new ArrayList<>();
+        for (File repository : repositories) {
+            present.add(repository.getName());
+            totalBytes += sizes.computeIfAbsent(repository.getName(), name -> FileUtils.sizeOfDirectory(repository));
+            if (clock.getAsLong() - lastUsed(repository) >= KEEP_RECENTLY_USED_MILLIS) {
+                candidates.add(repository);
+            }
+        }
+        // caches deleted by another agent sharing the directory
+        sizes.keySet().retainAll(present);
+        PluginMetrics.shared().gauge("shared-cache.bytes", totalBytes);
+        candidates.sort(Comparator.comparingLong(this::lastUsed));
+        for (File repository : candidates) {
+            if (totalBytes <= maxSizeBytes) {
+                return;
+            }
+            long size = sizes.getOrDefault(repository.getName(), 0L);
+            if (deleteUnlessInUse(repository)) {
+                sizes.remove(repository.getName());
+                totalBytes -= size;
+                PluginMetrics.shared().increment("shared-cache.evictions");
+                LOG.info(String.format("Evicted shared object cache %s (%d KiB)", repository, size / 1024));
+            }
+        }
+    }
+
+    private boolean deleteUnlessInUse(File repository) {
+        ReentrantLock lock = locks.computeIfAbsent(repository.getName(), name -> new ReentrantLock());
+        if (!lock.tryLock()) {
+            return false;
+        }
+        try (FileChannel channel = openLockFile(repository); FileLock fileLock = channel.tryLock()) {
+            if (fileLock == null || isBorrowed(repository)) {
+                return false;
+            }
+            FileUtils.deleteDirectory(repository);
+            return true;
+        } catch (OverlappingFileLockException e) {
+            return false;
+        } catch (IOException e) {
+            LOG.warn(String.format("Could not evict shared object cache %s", repository), e);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isBorrowed(File repository) throws IOException {
+        File[] borrowers = new File(repository, BORROWERS_DIRECTORY).listFiles();
+        if (borrowers == null) {
+            return false;
+        }
+        String objects = new File(repository, "objects").getAbsolutePath();
+        boolean borrowed = false;
+        for (File borrower : borrowers) {
+            File alternates = new File(FileUtils.readFileToString(borrower, StandardCharsets.UTF_8),
+                    ".git/objects/info/alternates");
+            if (alternates.isFile() && FileUtils.readLines(alternates, StandardCharsets.UTF_8).contains(objects)) {
+                borrowed = true;
+            } else {
+                FileUtils.deleteQuietly(borrower);
+            }
+        }
+        return borrowed;
+    }
+
+    private long lastUsed(File repository) {
+        return new File(repository, LAST_USED_FILE).lastModified();
+    }
+
+    private FileChannel openLockFile(File repository) throws IOException {
+        root.mkdirs();
+        return FileChannel.open(new File(root, repository.getName() + ".lock").toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private void git(File repository, String... args) {
+        CommandLine command = Console.createCommand(args);
+        DefaultExecutor executor = new DefaultExecutor();
+        executor.setWorkingDirectory(repository);
+        executor.setStreamHandler(new PumpStreamHandler(new LogOutputStream() {
+            @Override
+            protected void processLine(String line, int level) {
+                LOG.debug(line);
+            }
+        }));
+        try {
+            executor.execute(command);
+        } catch (IOException e) {
+            // the command line may hold the credentials of the material, name only the git command
+            throw new RuntimeException(String.format("Error performing git %s in %s", args[0], repository), e);
+        }
+    }
+
+    private static void write(File file, String contents) {
+        try {
+            FileUtils.writeStringToFile(file, contents, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Could not write %s", file), e);
+        }
+    }
+}
@@ -2,6 +2,10 @@ package in.ashwanthkumar.gocd.github.util;
 
 import in.ashwanthkumar.utils.lang.StringUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 public class URLUtils {
     public boolean isValidURL(String url) {
         if (StringUtils.isEmpty(url))
@@ -23,4 +27,19 @@ public class URLUtils {
     public boolean isValidSSHUrl(String url) {
         return url.contains("@") && url.replaceAll("//", "/").split("/").length == 2;
     }
+
+    /**
+     * A name for files or directories that belong to the repository at the given URL, the same for every JVM.
+     */
+    public static String directoryNameFor(String url) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -0,0 +1,127 @@
+package in.ashwanthkumar.gocd.github;
+
+import com.thoughtworks.go.plugin.api.GoApplicationAccessor;
+import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
+import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
+import com.tw.go.plugin.model.GitConfig;
+import com.tw.go.plugin.model.Revision;
+import in.ashwanthkumar.gocd.github.provider.git.GitProvider;
+import in.ashwanthkumar.gocd.github.util.ExtendedGitCmdHelper;
+import in.ashwanthkumar.gocd.github.util.GitFactory;
+import in.ashwanthkumar.gocd.github.util.GitFolderFactory;
+import in.ashwanthkumar.gocd.github.util.JSONUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static in.ashwanthkumar.gocd.github.provider.MaterialContext.apiUrlOf;
+import static in.ashwanthkumar.gocd.github.provider.MaterialContext.projectNameOf;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class GitHubPRBuildPluginConcurrencyTest {
+    private static final int MATERIALS = 200;
+    private static final int THREADS = 8;
+
+    // The first polls only leave git once all threads are inside git at once
+    private final CountDownLatch allInsideGit = new CountDownLatch(THREADS);
+    private final GitHubPRBuildPlugin plugin = new GitHubPRBuildPlugin(new MaterialEchoProvider(),
+            new LatchedGitFactory(allInsideGit), new GitFolderFactory(), mock(GoApplicationAccessor.class));
+
+    @Test
+    public void shouldKeepMaterialsApartWhenPolledConcurrently() throws Exception {
+        pollAllMaterials(THREADS);
+
+        assertThat(allInsideGit.getCount(), is(0L));
+    }
+
+    private void pollAllMaterials(int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<GoPluginApiResponse>> responses = new ArrayList<>();
+            for (int i = 0; i < MATERIALS; i++) {
+                GoPluginApiRequest request = requestFor(i);
+                responses.add(executor.submit(() -> plugin.handleGetLatestRevision(request)));
+            }
+            for (int i = 0; i < MATERIALS; i++) {
+                GoPluginApiResponse response = responses.get(i).get(30, TimeUnit.SECONDS);
+                assertThat(response.responseCode(), is(200));
+                Map<String, Object> body = (Map<String, Object>) JSONUtils.fromJSON(response.responseBody());
+                Map<String, String> data = (Map<String, String>) ((Map<String, Object>) body.get("revision")).get("data");
+                assertThat(data.get("API_URL"), is("https://bitbucket.example.com/" + i));
+                assertThat(data.get("PROJECT"), is("project-" + i));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private GoPluginApiRequest requestFor(int material) {
+        GoPluginApiRequest request = mock(GoPluginApiRequest.class);
+        when(request.requestBody()).thenReturn(String.format("{scm-configuration: {" +
+                "url: {value: \"https://bitbucket.example.com/scm/project-%1$d/repo-%1$d.git\"}, " +
+                "apiUrl: {value: \"https://bitbucket.example.com/%1$d\"}, " +
+                "projectName: {value: \"project-%1$d\"}}, " +
+                "flyweight-folder: \"/tmp/flyweight-%1$d\"}", material));
+        return request;
+    }
+
+    static class MaterialEchoProvider extends GitProvider {
+        @Override
+        public void populateRevisionData(GitConfig gitConfig, String prId, String prSHA, Map<String, String> data) {
+            data.put("API_URL", apiUrlOf(gitConfig));
+            data.put("PROJECT", projectNameOf(gitConfig));
+        }
+    }
+
+    static class LatchedGitFactory extends GitFactory {
+        private final CountDownLatch allInsideGit;
+
+        LatchedGitFactory(CountDownLatch allInsideGit) {
+            this.allInsideGit = allInsideGit;
+        }
+
+        @Override
+        public ExtendedGitCmdHelper create(GitConfig config, File folder) {
+            return new ExtendedGitCmdHelper(config, folder) {
+                @Override
+                public void cloneOrFetch(String refSpec) {
+                    allInsideGit.countDown();
+                    try {
+                        if (!allInsideGit.await(10, TimeUnit.SECONDS)) {
+                            throw new IllegalStateException("Polls of different materials did not run concurrently");
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                @Override
+                public Map<String, String> getBranchToRevisionMap(String pattern) {
+                    return Collections.singletonMap("master", "sha-" + folder.getName());
+                }
+
+                @Override
+                public void submoduleUpdate() {
+                }
+
+                @Override
+                public Revision getDetailsForRevision(String sha) {
+                    return new Revision(sha, new Date(), "", "", "", Collections.emptyList());
+                }
+            };
+        }
+    }
+}
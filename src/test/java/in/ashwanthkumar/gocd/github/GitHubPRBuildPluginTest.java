@@ -8,7 +8,9 @@ import com.thoughtworks.go.plugin.api.response.DefaultGoApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import com.tw.go.plugin.model.GitConfig;
 import com.tw.go.plugin.model.Revision;
+import in.ashwanthkumar.gocd.github.provider.ApiChangeDetector;
 import in.ashwanthkumar.gocd.github.provider.Provider;
+import in.ashwanthkumar.gocd.github.provider.PullRequestHeads;
 import in.ashwanthkumar.gocd.github.provider.gerrit.GerritProvider;
 import in.ashwanthkumar.gocd.github.provider.git.GitProvider;
 import in.ashwanthkumar.gocd.github.provider.github.GHUtils;
@@ -17,6 +19,8 @@ import in.ashwanthkumar.gocd.github.util.ExtendedGitCmdHelper;
 import in.ashwanthkumar.gocd.github.util.GitFactory;
 import in.ashwanthkumar.gocd.github.util.GitFolderFactory;
 import in.ashwanthkumar.gocd.github.util.JSONUtils;
+import in.ashwanthkumar.gocd.github.util.PollDeadline;
+import in.ashwanthkumar.gocd.github.util.SharedObjectCache;
 import org.apache.commons.io.FileUtils;
 import org.junit.*;
 import org.mockito.ArgumentCaptor;
@@ -217,6 +221,29 @@ public class GitHubPRBuildPluginTest {
         assertThat(b.get("943"), is(not(nullValue())));
     }
 
+    @Test
+    public void shouldReportPhaseWhenPollRunsOutOfTime() {
+        GitFactory gitFactory = mock(GitFactory.class);
+        GitHubPRBuildPlugin plugin = new GitHubPRBuildPlugin(
+                new GitProvider(),
+                gitFactory,
+                mock(GitFolderFactory.class),
+                mockGoApplicationAccessor()
+        );
+        mockGitHelperToReturnBranch(gitFactory, "test-1");
+        System.setProperty(PollDeadline.Phase.FILTER.getBudgetProperty(), "0");
+        try {
+            GoPluginApiResponse response = plugin.handleLatestRevisionSince(mockRequest());
+
+            String message = (String) JSONUtils.fromJSON(response.responseBody());
+            assertThat(response.responseCode(), is(500));
+            assertThat(message, containsString("ran out of time before filter phase"));
+            assertThat(message, containsString("fetch="));
+        } finally {
+            System.clearProperty(PollDeadline.Phase.FILTER.getBudgetProperty());
+        }
+    }
+
     @Test
     public void shouldBuildWhitelistedBranch() {
         GitFactory gitFactory = mock(GitFactory.class);
@@ -396,14 +423,181 @@ public class GitHubPRBuildPluginTest {
     }
 
     @Test
-    public void keyValuePairs_should_extract_values_from_nested_maps() {
-        Map<String, String> keyValuePairs = GitHubPRBuildPlugin.keyValuePairs(
-                JSONUtils.fromJSON(mockRequestBody(), GitHubPRBuildPlugin.REQUEST_BODY_TYPE), "scm-configuration");
+    public void shouldNotTouchGitWhenApiReportsNoUpdatedPRs() {
+        GitFactory gitFactory = mock(GitFactory.class);
+        ExtendedGitCmdHelper helper = mock(ExtendedGitCmdHelper.class);
+        when(gitFactory.create(any(GitConfig.class), any(File.class))).thenReturn(helper);
+        GitFolderFactory gitFolderFactory = mock(GitFolderFactory.class);
+        TestApiProvider provider = new TestApiProvider(new PullRequestHeads(false, "2020-01-02T00:00:00Z"));
+        GitHubPRBuildPlugin plugin = new GitHubPRBuildPlugin(
+                provider,
+                gitFactory,
+                gitFolderFactory,
+                mockGoApplicationAccessor()
+        );
+
+        GoPluginApiRequest request = mock(GoPluginApiRequest.class);
+        when(request.requestBody()).thenReturn("{scm-configuration: {url: {value: \"https://github.com/mdaliejaz/samplerepo.git\"}}, " +
+                "scm-data: {BRANCH_TO_REVISION_MAP: \"{\\\"1\\\":\\\"sha-1\\\"}\", API_HEADS: \"{\\\"1\\\":\\\"sha-1\\\"}\", " +
+                "API_SYNC_CURSOR: \"2020-01-01T00:00:00Z\"}, flyweight-folder: \"" + TEST_DIR + "\"}");
+
+        GoPluginApiResponse response = plugin.handleLatestRevisionSince(request);
+
+        assertEquals("2020-01-01T00:00:00Z", provider.cursor);
+        verify(helper, never()).cloneOrFetch(anyString());
+        Map<String, Object> responseBody = (Map<String, Object>) JSONUtils.fromJSON(response.responseBody());
+        Map<String, String> scmData = (Map<String, String>) responseBody.get("scm-data");
+        assertThat(responseBody.containsKey("revisions"), is(false));
+        assertEquals("{\"1\":\"sha-1\"}", scmData.get("API_HEADS"));
+        assertEquals("2020-01-02T00:00:00Z", scmData.get("API_SYNC_CURSOR"));
+    }
+
+    @Test
+    public void shouldFetchOnlyTheUpdatedPRWhenApiReportsIt() {
+        GitFactory gitFactory = mock(GitFactory.class);
+        Map<String, String> revisions = new HashMap<>();
+        revisions.put("1", "sha-1-new");
+        mockGitRevisions(gitFactory, revisions);
+        GitFolderFactory gitFolderFactory = mock(GitFolderFactory.class);
+        PullRequestHeads heads = new PullRequestHeads(false, "2020-01-02T00:00:00Z");
+        heads.open("1", "sha-1-new");
+        TestApiProvider provider = new TestApiProvider(heads);
+        GitHubPRBuildPlugin plugin = new GitHubPRBuildPlugin(
+                provider,
+                gitFactory,
+                gitFolderFactory,
+                mockGoApplicationAccessor()
+        );
+
+        GoPluginApiRequest request = mock(GoPluginApiRequest.class);
+        when(request.requestBody()).thenReturn("{scm-configuration: {url: {value: \"https://github.com/mdaliejaz/samplerepo.git\"}}, " +
+                "scm-data: {BRANCH_TO_REVISION_MAP: \"{}\", API_HEADS: \"{}\", API_SYNC_CURSOR: \"2020-01-01T00:00:00Z\"}, " +
+                "flyweight-folder: \"" + TEST_DIR + "\"}");
+
+        GoPluginApiResponse response = plugin.handleLatestRevisionSince(request);
+
+        ExtendedGitCmdHelper helper = gitFactory.create(null, null);
+        verify(helper).cloneOrFetch("+refs/pull/1/head:refs/remotes/origin/pull/1");
+        verify(helper, never()).getBranchToRevisionMap(anyString());
+        Map<String, Object> responseBody = (Map<String, Object>) JSONUtils.fromJSON(response.responseBody());
+        List<Map<String, Object>> returnedRevisions = (List<Map<String, Object>>) responseBody.get("revisions");
+        assertEquals("sha-1-new", returnedRevisions.get(0).get("revision"));
+    }
+
+    @Test
+    public void shouldListCommitsSincePreviousHeadWithoutResettingTheFlyweight() {
+        GitFactory gitFactory = mock(GitFactory.class);
+        Map<String, String> revisions = new HashMap<>();
+        revisions.put("1", "sha-1-new");
+        mockGitRevisions(gitFactory, revisions);
+        ExtendedGitCmdHelper helper = gitFactory.create(null, null);
+        when(helper.getRevisionsBetween("sha-1", "sha-1-new")).thenReturn(singletonList(
+                new Revision("sha-1-new", new Date(), "", "", "", Collections.emptyList())));
+        PullRequestHeads heads = new PullRequestHeads(false, "2020-01-02T00:00:00Z");
+        heads.open("1", "sha-1-new");
+        GitHubPRBuildPlugin plugin = new GitHubPRBuildPlugin(
+                new TestApiProvider(heads),
+                gitFactory,
+                mock(GitFolderFactory.class),
+                mockGoApplicationAccessor()
+        );
+
+        GoPluginApiRequest request = mock(GoPluginApiRequest.class);
+        when(request.requestBody()).thenReturn("{scm-configuration: {url: {value: \"https://github.com/mdaliejaz/samplerepo.git\"}}, " +
+                "scm-data: {BRANCH_TO_REVISION_MAP: \"{\\\"1\\\":\\\"sha-1\\\"}\", API_HEADS: \"{\\\"1\\\":\\\"sha-1\\\"}\", " +
+                "API_SYNC_CURSOR: \"2020-01-01T00:00:00Z\"}, flyweight-folder: \"" + TEST_DIR + "\"}");
+
+        GoPluginApiResponse response = plugin.handleLatestRevisionSince(request);
+
+        verify(helper).getRevisionsBetween("sha-1", "sha-1-new");
+        verify(helper, never()).resetHard(anyString());
+        Map<String, Object> responseBody = (Map<String, Object>) JSONUtils.fromJSON(response.responseBody());
+        List<Map<String, Object>> returnedRevisions = (List<Map<String, Object>>) responseBody.get("revisions");
+        assertEquals("sha-1-new", returnedRevisions.get(0).get("revision"));
+    }
+
+    @Test
+    public void shouldNotFetchOnCheckoutWhenRevisionIsAlreadyPresent() {
+        ExtendedGitCmdHelper helper = mock(ExtendedGitCmdHelper.class);
+        when(helper.hasRevision("sha-1")).thenReturn(true);
+
+        GoPluginApiResponse response = checkoutWithTargetedFetch(helper);
+
+        verify(helper, never()).fetchOnly(anyString(), anyInt());
+        verify(helper, never()).cloneOrFetch(anyString());
+        verify(helper).resetHard("sha-1");
+        assertThat(response.responseBody(), containsString("already present"));
+    }
+
+    @Test
+    public void shouldFetchOnlyThePRRefOnCheckoutWhenRevisionIsMissing() {
+        ExtendedGitCmdHelper helper = mock(ExtendedGitCmdHelper.class);
+        when(helper.isRepositoryPresent()).thenReturn(true);
+        when(helper.hasRevision("sha-1")).thenReturn(false, true);
+        when(helper.fetchOnly("+refs/pull/1/head:refs/remotes/origin/pull/1", 0)).thenReturn(true);
+        when(helper.objectStoreSize()).thenReturn(0L, 4096L);
+
+        GoPluginApiResponse response = checkoutWithTargetedFetch(helper);
+
+        verify(helper, never()).fetchOnly(eq("sha-1"), anyInt());
+        verify(helper, never()).cloneOrFetch(anyString());
+        Map<String, Object> responseBody = (Map<String, Object>) JSONUtils.fromJSON(response.responseBody());
+        assertThat(((List<String>) responseBody.get("messages")).get(2),
+                containsString("Fetched only +refs/pull/1/head:refs/remotes/origin/pull/1, 4 KiB added to the repository"));
+    }
+
+    @Test
+    public void shouldUpdateExistingWorkspaceInPlaceWithoutSubmoduleUpdate() {
+        ExtendedGitCmdHelper helper = mock(ExtendedGitCmdHelper.class);
+        when(helper.reusableCheckoutRevision()).thenReturn("sha-0");
+        when(helper.hasRevision("sha-1")).thenReturn(true);
+        when(helper.submodulesChanged("sha-0", "sha-1")).thenReturn(false);
+
+        GoPluginApiResponse response = checkoutWithTargetedFetch(helper);
+
+        verify(helper).switchTo("gocd-pr", "sha-1");
+        verify(helper, never()).cloneOrFetch(anyString());
+        verify(helper, never()).resetHard(anyString());
+        verify(helper, never()).updateSubmodules(anyInt(), any(SharedObjectCache.class));
+        assertThat(response.responseBody(), containsString("Updated workspace from sha-0, submodules unchanged"));
+    }
 
-        assertThat(keyValuePairs.get("branchblacklist"), is("master"));
-        assertThat(keyValuePairs.get("branchwhitelist"), is("test*, feat*"));
-        assertThat(keyValuePairs.get("url"), is("https://github.com/mdaliejaz/samplerepo.git"));
-        assertThat(keyValuePairs.size(), is(3));
+    @Test
+    public void shouldUpdateSubmodulesOfExistingWorkspaceWhenGitlinksChanged() {
+        ExtendedGitCmdHelper helper = mock(ExtendedGitCmdHelper.class);
+        when(helper.reusableCheckoutRevision()).thenReturn("sha-0");
+        when(helper.hasRevision("sha-1")).thenReturn(true);
+        when(helper.submodulesChanged("sha-0", "sha-1")).thenReturn(true);
+
+        Map<String, Long> millisByPath = new LinkedHashMap<>();
+        millisByPath.put("libs/a", 120L);
+        millisByPath.put("libs/b", 80L);
+        when(helper.updateSubmodules(4, null)).thenReturn(millisByPath);
+
+        GoPluginApiResponse response = checkoutWithTargetedFetch(helper);
+
+        verify(helper).markSubmodulesUpdatedAt("sha-1");
+        assertThat(response.responseBody(), containsString("2 submodules updated in"));
+        assertThat(response.responseBody(), containsString("libs/a done at +120ms, libs/b done at +80ms"));
+    }
+
+    private GoPluginApiResponse checkoutWithTargetedFetch(ExtendedGitCmdHelper helper) {
+        GitFactory gitFactory = mock(GitFactory.class);
+        when(gitFactory.create(any(GitConfig.class), any(File.class))).thenReturn(helper);
+        GitHubPRBuildPlugin plugin = new GitHubPRBuildPlugin(new TestApiProvider(new PullRequestHeads(false, null)),
+                gitFactory, mock(GitFolderFactory.class), mockGoApplicationAccessor());
+
+        GoPluginApiRequest request = mock(GoPluginApiRequest.class);
+        when(request.requestName()).thenReturn(GitHubPRBuildPlugin.REQUEST_CHECKOUT);
+        when(request.requestBody()).thenReturn("{scm-configuration: {url: {value: \"https://github.com/mdaliejaz/samplerepo.git\"}}, " +
+                "destination-folder: \"" + TEST_DIR + "\", revision: {revision: \"sha-1\", data: {PR_ID: \"1\"}}}");
+
+        System.setProperty(GitHubPRBuildPlugin.TARGETED_CHECKOUT_FETCH_PROPERTY, "Y");
+        try {
+            return plugin.handle(request);
+        } finally {
+            System.clearProperty(GitHubPRBuildPlugin.TARGETED_CHECKOUT_FETCH_PROPERTY);
+        }
     }
 
     private GoPluginApiRequest mockRequest() {
@@ -467,6 +661,59 @@ public class GitHubPRBuildPluginTest {
         assertThat(((Map<String, String>) prStatuses.getValue()).get("2"), is("f985e61e556fc37f952385152d837de426b5cd8a"));
     }
 
+    @Test
+    public void shouldRejectUnknownCloneFilter() {
+        Map request = createRequestMap(Arrays.asList(new Pair("url", "https://github.com/ashwanthkumar/foo"),
+                new Pair("cloneFilter", "blob:all")));
+
+        GitHubPRBuildPlugin plugin = new GitHubPRBuildPlugin();
+        plugin.setProvider(new GitHubProvider());
+        GoPluginApiResponse response = plugin.handle(createGoPluginApiRequest(GitHubPRBuildPlugin.REQUEST_VALIDATE_SCM_CONFIGURATION, request));
+
+        verifyResponse(response.responseBody(), singletonList(new Pair("cloneFilter",
+                "Partial clone filter must be blob:none, tree:0 or blob:limit=<size>")));
+    }
+
+    @Test
+    public void shouldAcceptPartialCloneFilters() {
+        GitHubPRBuildPlugin plugin = new GitHubPRBuildPlugin();
+        plugin.setProvider(new GitHubProvider());
+
+        for (String cloneFilter : Arrays.asList("blob:none", "tree:0", "blob:limit=1m", "")) {
+            Map request = createRequestMap(Arrays.asList(new Pair("url", "https://github.com/ashwanthkumar/foo"),
+                    new Pair("cloneFilter", cloneFilter)));
+            GoPluginApiResponse response = plugin.handle(createGoPluginApiRequest(GitHubPRBuildPlugin.REQUEST_VALIDATE_SCM_CONFIGURATION, request));
+            verifyResponse(response.responseBody(), null);
+        }
+    }
+
+    @Test
+    public void shouldReadSparseCheckoutPaths() {
+        assertThat(GitHubPRBuildPlugin.sparseCheckoutPaths(" services/api/, /libs/common,docs ,, "),
+                is(Arrays.asList("services/api", "libs/common", "docs")));
+        assertThat(GitHubPRBuildPlugin.sparseCheckoutPaths(null).isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldServeStaticResponsesRenderedOncePerProvider() {
+        GitHubPRBuildPlugin plugin = new GitHubPRBuildPlugin();
+        plugin.setProvider(new GitHubProvider());
+
+        GoPluginApiResponse view = plugin.handle(createGoPluginApiRequest(GitHubPRBuildPlugin.REQUEST_SCM_VIEW, new HashMap()));
+        GoPluginApiResponse configuration = plugin.handle(createGoPluginApiRequest(GitHubPRBuildPlugin.REQUEST_SCM_CONFIGURATION, new HashMap()));
+
+        assertThat(view.responseCode(), is(200));
+        assertThat(((Map<String, Object>) JSONUtils.fromJSON(view.responseBody())).get("displayValue"), is((Object) "Github"));
+        assertThat((Map<String, Object>) JSONUtils.fromJSON(configuration.responseBody()), hasKey("url"));
+        assertThat(plugin.handle(createGoPluginApiRequest(GitHubPRBuildPlugin.REQUEST_SCM_VIEW, new HashMap())) == view, is(true));
+
+        plugin.setProvider(new GerritProvider());
+
+        GoPluginApiResponse gerritView = plugin.handle(createGoPluginApiRequest(GitHubPRBuildPlugin.REQUEST_SCM_VIEW, new HashMap()));
+        assertThat(gerritView == view, is(false));
+        assertThat(((Map<String, Object>) JSONUtils.fromJSON(gerritView.responseBody())).get("displayValue"), is((Object) "Gerrit"));
+    }
+
     // TODO - Write proper tests for the plugin
 
     private void verifyValidationSuccess(String url) {
@@ -577,4 +824,30 @@ public class GitHubPRBuildPluginTest {
             data.putAll(revisionData);
         }
     }
+
+    static class TestApiProvider extends TestProvider implements ApiChangeDetector {
+
+        private final PullRequestHeads heads;
+        private String cursor;
+
+        TestApiProvider(PullRequestHeads heads) {
+            this.heads = heads;
+        }
+
+        @Override
+        public boolean isApiChangeDetectionEnabled() {
+            return true;
+        }
+
+        @Override
+        public PullRequestHeads listHeadsSince(GitConfig gitConfig, String cursor) {
+            this.cursor = cursor;
+            return heads;
+        }
+
+        @Override
+        public String getRefSpec(String branch) {
+            return "+refs/pull/" + branch + "/head:refs/remotes/origin/pull/" + branch;
+        }
+    }
 }
@@ -0,0 +1,82 @@
+package in.ashwanthkumar.gocd.github.model;
+
+import com.tw.go.plugin.model.ModifiedFile;
+import com.tw.go.plugin.model.Revision;
+import in.ashwanthkumar.gocd.github.util.JSONUtils;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class RevisionMessageTest {
+    @Test
+    public void shouldWriteRevisionWithModifiedFilesAndDataBag() {
+        Date timestamp = new Date(1577836800123L);
+        Map<String, String> data = new HashMap<>();
+        data.put("PR_ID", "1");
+        data.put("PR_DESCRIPTION", null);
+        RevisionMessage revision = new RevisionMessage(new Revision("abcdef", timestamp, "Fix it", "Jane", "jane@example.com",
+                Collections.singletonList(new ModifiedFile("README.md", "modified"))), data);
+
+        Map<String, Object> rendered = (Map<String, Object>) JSONUtils.fromJSON(JSONUtils.toJSON(revision));
+
+        assertThat(rendered.get("revision"), is("abcdef"));
+        assertThat(rendered.get("user"), is("Jane"));
+        assertThat(rendered.get("revisionComment"), is("Fix it"));
+        assertThat(rendered.get("timestamp"), is(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").format(timestamp)));
+        Map<String, Object> modifiedFile = ((List<Map<String, Object>>) rendered.get("modifiedFiles")).get(0);
+        assertThat(modifiedFile.get("fileName"), is("README.md"));
+        assertThat(modifiedFile.get("action"), is("modified"));
+        assertThat(rendered.get("data"), is((Object) Collections.singletonMap("PR_ID", "1")));
+    }
+
+    @Test
+    public void shouldRenderOnlyTheRevisionsThatAreSet() {
+        RevisionMessage revision = new RevisionMessage(new Revision("abcdef", new Date(), "Fix it", "Jane", "jane@example.com",
+                Collections.emptyList()), Collections.singletonMap("PR_ID", "1"));
+
+        Map<String, Object> rendered = (Map<String, Object>) JSONUtils.fromJSON(JSONUtils.toJSON(
+                LatestRevisionResponse.ofRevision(revision, Collections.singletonMap("BRANCH_TO_REVISION_MAP", "{}"))));
+
+        assertThat(rendered.containsKey("revisions"), is(false));
+        assertThat(((Map<String, Object>) rendered.get("revision")).get("revisionComment"), is("Fix it"));
+        assertThat(((Map<String, Object>) rendered.get("scm-data")).get("BRANCH_TO_REVISION_MAP"), is("{}"));
+    }
+
+    @Test
+    public void shouldReadRevisionAsWritten() {
+        Date timestamp = new Date(1577836800123L);
+        RevisionMessage revision = new RevisionMessage(new Revision("abcdef", timestamp, "Fix it", "Jane", "jane@example.com",
+                Collections.singletonList(new ModifiedFile("README.md", "modified"))), Collections.singletonMap("PR_ID", "1"));
+
+        RevisionMessage read = JSONUtils.fromJSON(JSONUtils.toJSON(revision), RevisionMessage.class);
+
+        assertThat(read.getRevision(), is("abcdef"));
+        assertThat(read.getTimestamp(), is(revision.getTimestamp()));
+        assertThat(read.getData(), is(Collections.singletonMap("PR_ID", "1")));
+        assertThat(JSONUtils.toJSON(read), is(JSONUtils.toJSON(revision)));
+    }
+
+    @Test
+    public void shouldFormatTimestampInTheCurrentDefaultTimeZone() {
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        RevisionMessage revision = new RevisionMessage(new Revision("abcdef", new Date(0), "Fix it", "Jane", "jane@example.com",
+                Collections.emptyList()), Collections.emptyMap());
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+            assertThat(revision.getTimestamp(), is("1970-01-01T00:00:00.000Z"));
+            TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+            assertThat(revision.getTimestamp(), is("1970-01-01T05:30:00.000Z"));
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package in.ashwanthkumar.gocd.github.model;
+
+import in.ashwanthkumar.gocd.github.util.JSONUtils;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ScmRequestTest {
+    @Test
+    public void shouldReadConfigurationValuesAndScmData() {
+        ScmRequest request = ScmRequest.fromJSON("{scm-configuration: {url: {value: \"https://github.com/owner/repo.git\"}, " +
+                "branchwhitelist: {value: \"feat*\"}}, scm-data: {BRANCH_TO_REVISION_MAP: \"{}\"}, flyweight-folder: \"/tmp/flyweight\"}");
+
+        assertThat(request.getScmConfiguration().get("url"), is("https://github.com/owner/repo.git"));
+        assertThat(request.getScmConfiguration().get("branchwhitelist"), is("feat*"));
+        assertThat(request.getScmDataMap("BRANCH_TO_REVISION_MAP").isEmpty(), is(true));
+        assertThat(request.hasScmData("BRANCH_TO_REVISION_MAP"), is(true));
+        assertThat(request.getFlyweightFolder(), is("/tmp/flyweight"));
+        assertThat(request.getRevision(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldExtractConfigurationValuesFromNestedMaps() {
+        ScmRequest request = ScmRequest.fromJSON("{\n" +
+                "    \"scm-configuration\": {\n" +
+                "        \"url\": {\n" +
+                "            \"value\": \"https://github.com/mdaliejaz/samplerepo.git\"\n" +
+                "        },\n" +
+                "        \"branchwhitelist\": {\n" +
+                "            \"value\": \"test*, feat*\"\n" +
+                "        },\n" +
+                "        \"branchblacklist\": {\n" +
+                "            \"value\": \"master\"\n" +
+                "        }\n" +
+                "    },\n" +
+                "    \"scm-data\": {\n" +
+                "        \"BRANCH_TO_REVISION_MAP\": \"{}\"\n" +
+                "    },\n" +
+                "    \"flyweight-folder\": \"\"\n" +
+                "}\n");
+
+        assertThat(request.getScmConfiguration().get("branchblacklist"), is("master"));
+        assertThat(request.getScmConfiguration().get("branchwhitelist"), is("test*, feat*"));
+        assertThat(request.getScmConfiguration().get("url"), is("https://github.com/mdaliejaz/samplerepo.git"));
+        assertThat(request.getScmConfiguration().size(), is(3));
+    }
+
+    @Test
+    public void shouldDecodeNestedBranchMapAndKeepPlainScmDataAsIs() {
+        StringBuilder branchMap = new StringBuilder("{");
+        for (int i = 0; i < 50000; i++) {
+            branchMap.append(i == 0 ? "" : ",").append("\\\"").append(i).append("\\\":\\\"sha-").append(i).append("\\\"");
+        }
+        branchMap.append("}");
+
+        ScmRequest request = ScmRequest.fromJSON("{\"scm-configuration\": {\"url\": {\"value\": \"https://github.com/owner/repo.git\", " +
+                "\"secure\": false}}, \"scm-data\": {\"BRANCH_TO_REVISION_MAP\": \"" + branchMap + "\", " +
+                "\"API_SYNC_CURSOR\": \"2020-01-01T00:00:00Z\"}, \"unused\": [1, {\"deep\": true}]}");
+
+        Map<String, String> branchToRevisionMap = request.getScmDataMap("BRANCH_TO_REVISION_MAP");
+        assertThat(branchToRevisionMap.size(), is(50000));
+        assertThat(branchToRevisionMap.get("49999"), is("sha-49999"));
+        assertThat(request.getScmData().get("API_SYNC_CURSOR"), is("2020-01-01T00:00:00Z"));
+        assertThat(request.getScmData().get("BRANCH_TO_REVISION_MAP").startsWith("{\"0\":\"sha-0\","), is(true));
+        assertThat(request.getScmConfiguration().get("url"), is("https://github.com/owner/repo.git"));
+        assertThat(request.getScmDataMap("API_HEADS"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldKeepScmDataThatIsNotReadAsMapRaw() {
+        ScmRequest request = ScmRequest.fromJSON("{\"scm-data\": {\"BRANCH_TO_REVISION_MAP\": \"{\\\"1\\\": \\\"sha-1\\\"}\", " +
+                "\"NOTE\": \"{not json\"}}");
+
+        assertThat(request.getScmData().get("NOTE"), is("{not json"));
+        assertThat(request.getScmData().get("BRANCH_TO_REVISION_MAP"), is("{\"1\": \"sha-1\"}"));
+        assertThat(request.getScmDataMap("BRANCH_TO_REVISION_MAP").get("1"), is("sha-1"));
+    }
+
+    @Test
+    public void shouldWriteRequestInTheFormatItIsRead() {
+        ScmRequest request = ScmRequest.fromJSON("{\"scm-configuration\": {\"url\": {\"value\": \"https://github.com/owner/repo.git\"}}, " +
+                "\"scm-data\": {\"BRANCH_TO_REVISION_MAP\": \"{\\\"1\\\": \\\"sha-1\\\"}\"}, \"flyweight-folder\": \"/tmp/flyweight\", " +
+                "\"revision\": {\"revision\": \"abcdef\", \"data\": {\"PR_ID\": \"1\"}}}");
+
+        ScmRequest copy = ScmRequest.fromJSON(JSONUtils.toJSON(request));
+
+        assertThat(copy.getScmConfiguration(), is(request.getScmConfiguration()));
+        assertThat(copy.getScmDataMap("BRANCH_TO_REVISION_MAP").get("1"), is("sha-1"));
+        assertThat(copy.getFlyweightFolder(), is("/tmp/flyweight"));
+        assertThat(copy.getRevision().getRevision(), is("abcdef"));
+        assertThat(copy.getRevision().getData().get("PR_ID"), is("1"));
+    }
+
+    @Test
+    public void shouldReadCheckoutRevisionWithItsDataBag() {
+        ScmRequest request = ScmRequest.fromJSON("{\"scm-configuration\": {}, \"destination-folder\": \"/tmp/checkout\", " +
+                "\"revision\": {\"revision\": \"abcdef\", \"timestamp\": \"2020-01-01T00:00:00.000Z\", \"data\": {\"PR_ID\": \"1\"}}}");
+
+        assertThat(request.getDestinationFolder(), is("/tmp/checkout"));
+        assertThat(request.getRevision().getRevision(), is("abcdef"));
+        assertThat(request.getRevision().getData().get("PR_ID"), is("1"));
+        assertThat(request.getScmConfiguration().isEmpty(), is(true));
+        assertThat(request.getScmData().isEmpty(), is(true));
+    }
+}
@@ -0,0 +1,46 @@
+package in.ashwanthkumar.gocd.github.provider;
+
+import in.ashwanthkumar.gocd.github.provider.AuthorProfileCache.AuthorProfile;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class AuthorProfileCacheTest {
+    private static final String API_URL = "https://api.github.com";
+
+    @Test
+    public void shouldReturnProfileOfTheLogin() {
+        AuthorProfileCache cache = new AuthorProfileCache(10, TimeUnit.MINUTES.toMillis(1));
+        cache.put(API_URL, "jane", new AuthorProfile("Jane", "jane@example.com"));
+
+        AuthorProfile profile = cache.get(API_URL, "jane");
+
+        assertThat(profile.getName(), is("Jane"));
+        assertThat(profile.getEmail(), is("jane@example.com"));
+        assertThat(cache.get(API_URL, "john"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldKeepEndpointsApart() {
+        AuthorProfileCache cache = new AuthorProfileCache(10, TimeUnit.MINUTES.toMillis(1));
+        cache.put(API_URL, "jane", new AuthorProfile("Jane", "jane@example.com"));
+
+        assertThat(cache.get("https://github.example.com/api/v3", "jane"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldForgetLeastRecentlyUsedProfilesBeyondItsSize() {
+        AuthorProfileCache cache = new AuthorProfileCache(2, TimeUnit.MINUTES.toMillis(1));
+        cache.put(API_URL, "jane", new AuthorProfile("Jane", "jane@example.com"));
+        cache.put(API_URL, "john", new AuthorProfile("John", "john@example.com"));
+        cache.get(API_URL, "jane");
+        cache.put(API_URL, "joan", new AuthorProfile("Joan", "joan@example.com"));
+
+        assertThat(cache.get(API_URL, "john"), is(nullValue()));
+        assertThat(cache.get(API_URL, "jane").getName(), is("Jane"));
+    }
+}
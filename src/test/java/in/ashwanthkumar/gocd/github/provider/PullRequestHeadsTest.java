@@ -0,0 +1,44 @@
+package in.ashwanthkumar.gocd.github.provider;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class PullRequestHeadsTest {
+
+    @Test
+    public void shouldApplyUpdatesAndClosedPRsToPreviousHeads() {
+        Map<String, String> previous = new HashMap<>();
+        previous.put("1", "sha-1");
+        previous.put("2", "sha-2");
+        previous.put("3", "sha-3");
+
+        PullRequestHeads heads = new PullRequestHeads(false, "2020-01-01T00:00:00Z");
+        heads.open("2", "sha-2-new");
+        heads.open("4", "sha-4");
+        heads.closed("3");
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("1", "sha-1");
+        expected.put("2", "sha-2-new");
+        expected.put("4", "sha-4");
+        assertThat(heads.applyTo(previous), is(expected));
+    }
+
+    @Test
+    public void shouldReplacePreviousHeadsWithCompleteListing() {
+        Map<String, String> previous = new HashMap<>();
+        previous.put("1", "sha-1");
+
+        PullRequestHeads heads = new PullRequestHeads(true, null);
+        heads.open("2", "sha-2");
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("2", "sha-2");
+        assertThat(heads.applyTo(previous), is(expected));
+    }
+}
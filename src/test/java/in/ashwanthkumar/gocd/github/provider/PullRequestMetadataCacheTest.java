@@ -0,0 +1,53 @@
+package in.ashwanthkumar.gocd.github.provider;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class PullRequestMetadataCacheTest {
+    private static final String REPO = "https://github.com/ashwanthkumar/foo.git";
+
+    @Test
+    public void shouldShareMetadataForTheSameHead() {
+        PullRequestMetadataCache cache = new PullRequestMetadataCache(10, TimeUnit.MINUTES.toMillis(1));
+        cache.put(REPO, "7", "head1", Collections.singletonMap("PR_TITLE", "Fix it"));
+
+        cache.retainHead(REPO, "7", "head1");
+
+        Map<String, String> metadata = cache.get(REPO, "7", "head1");
+        assertThat(metadata.get("PR_TITLE"), is("Fix it"));
+    }
+
+    @Test
+    public void shouldInvalidateMetadataWhenHeadChanges() {
+        PullRequestMetadataCache cache = new PullRequestMetadataCache(10, TimeUnit.MINUTES.toMillis(1));
+        cache.put(REPO, "7", "head1", Collections.singletonMap("PR_TITLE", "Fix it"));
+
+        cache.retainHead(REPO, "7", "head2");
+
+        assertThat(cache.get(REPO, "7", "head1"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldKeepRepositoriesApart() {
+        PullRequestMetadataCache cache = new PullRequestMetadataCache(10, TimeUnit.MINUTES.toMillis(1));
+        cache.put(REPO, "7", "head1", Collections.singletonMap("PR_TITLE", "Fix it"));
+
+        assertThat(cache.get("https://github.com/ashwanthkumar/bar.git", "7", "head1"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldMissMetadataOfAnotherHead() {
+        PullRequestMetadataCache cache = new PullRequestMetadataCache(10, TimeUnit.MINUTES.toMillis(1));
+        cache.put(REPO, "7", "head1", Collections.singletonMap("PR_TITLE", "Fix it"));
+
+        assertThat(cache.get(REPO, "7", "head2"), is(nullValue()));
+        assertThat(cache.get(REPO, "7", "head1"), is(nullValue()));
+    }
+}
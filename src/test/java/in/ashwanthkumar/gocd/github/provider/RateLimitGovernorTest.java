@@ -0,0 +1,71 @@
+package in.ashwanthkumar.gocd.github.provider;
+
+import in.ashwanthkumar.gocd.github.util.PluginMetrics;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class RateLimitGovernorTest {
+    private static final String API = "https://api.example.com";
+
+    @Test
+    public void shouldAllowCallsForUnknownApis() {
+        RateLimitGovernor governor = new RateLimitGovernor(10, 0);
+
+        assertThat(governor.acquire(API, RateLimitGovernor.Priority.LOW), is(true));
+        assertThat(governor.acquire(null, RateLimitGovernor.Priority.LOW), is(true));
+        assertThat(governor.remaining(API), is(-1));
+    }
+
+    @Test
+    public void shouldDeferLowPriorityCallsWhenQuotaIsLow() {
+        RateLimitGovernor governor = new RateLimitGovernor(10, 0);
+        governor.update(API, 5, 5000, inOneHour());
+
+        assertThat(governor.acquire(API, RateLimitGovernor.Priority.LOW), is(false));
+        assertThat(governor.acquire(API, RateLimitGovernor.Priority.HIGH), is(true));
+    }
+
+    @Test
+    public void shouldAllowLowPriorityCallsAfterTheWindowResets() {
+        RateLimitGovernor governor = new RateLimitGovernor(10, 0);
+        governor.update(API, 0, 5000, System.currentTimeMillis() - 1);
+
+        assertThat(governor.acquire(API, RateLimitGovernor.Priority.LOW), is(true));
+    }
+
+    @Test
+    public void shouldConsumeQuotaOnEveryCall() {
+        RateLimitGovernor governor = new RateLimitGovernor(10, 0);
+        governor.update(API, 100, 5000, inOneHour());
+
+        governor.acquire(API, RateLimitGovernor.Priority.LOW);
+        governor.acquire(API, RateLimitGovernor.Priority.HIGH);
+
+        assertThat(governor.remaining(API), is(98));
+    }
+
+    @Test
+    public void shouldMarkApiAsExhausted() {
+        RateLimitGovernor governor = new RateLimitGovernor(10, 0);
+        governor.exhausted(API, inOneHour());
+
+        assertThat(governor.isExhausted(API), is(true));
+        assertThat(governor.acquire(API, RateLimitGovernor.Priority.LOW), is(false));
+    }
+
+    @Test
+    public void shouldReportRemainingQuotaAsGauge() {
+        RateLimitGovernor governor = new RateLimitGovernor(10, 0);
+        governor.update(API, 4321, 5000, inOneHour());
+
+        assertThat(PluginMetrics.shared().gauge("ratelimit." + API + ".remaining"), is(4321L));
+    }
+
+    private long inOneHour() {
+        return System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+    }
+}
@@ -0,0 +1,137 @@
+package in.ashwanthkumar.gocd.github.provider;
+
+import com.tw.go.plugin.model.GitConfig;
+import in.ashwanthkumar.gocd.github.provider.git.GitProvider;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class RevisionDataEnricherTest {
+    private final GitConfig gitConfig = new GitConfig("https://github.com/owner/repo.git", null, null, null, true, false);
+
+    @Test
+    public void shouldReturnWhatIsReadyWhenTheBudgetRunsOut() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Provider provider = new GitProvider() {
+            @Override
+            public void populateRevisionData(GitConfig gitConfig, String prId, String prSHA, Map<String, String> data) {
+                data.put("PR_ID", prId);
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                data.put("PR_TITLE", "title");
+            }
+        };
+        RevisionDataEnricher enricher = new RevisionDataEnricher(2, 10, 50);
+
+        RevisionDataEnricher.Poll poll = enricher.startPoll();
+        Map<String, String> data = poll.enrich(provider, gitConfig, "1", "sha-1");
+        assertThat(data.get("PR_ID"), is("1"));
+        assertThat(data.get("PR_TITLE"), is(nullValue()));
+        assertThat(poll.getTimedOut(), is(1));
+
+        release.countDown();
+        Thread.sleep(100);
+        RevisionDataEnricher.Poll nextPoll = enricher.startPoll();
+        assertThat(nextPoll.enrich(provider, gitConfig, "1", "sha-1").get("PR_TITLE"), is("title"));
+        assertThat(nextPoll.getCompleted(), is(1));
+    }
+
+    @Test
+    public void shouldHoldBackRevisionOnlyTheFirstTimeItsEnrichmentRunsOutOfBudget() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Provider provider = new GitProvider() {
+            @Override
+            public void populateRevisionData(GitConfig gitConfig, String prId, String prSHA, Map<String, String> data) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        RevisionDataEnricher enricher = new RevisionDataEnricher(2, 10, 50);
+
+        RevisionDataEnricher.Poll poll = enricher.startPoll();
+        poll.enrich(provider, gitConfig, "3", "sha-3");
+        assertThat(poll.holdBack(), is(true));
+
+        RevisionDataEnricher.Poll nextPoll = enricher.startPoll();
+        nextPoll.enrich(provider, gitConfig, "3", "sha-3");
+        assertThat(nextPoll.getTimedOut(), is(1));
+        assertThat(nextPoll.holdBack(), is(false));
+        release.countDown();
+    }
+
+    @Test
+    public void shouldNotHoldBackRevisionWithCompleteEnrichment() {
+        RevisionDataEnricher enricher = new RevisionDataEnricher(2, 10, 1000);
+
+        RevisionDataEnricher.Poll poll = enricher.startPoll();
+        poll.enrich(new GitProvider(), gitConfig, "4", "sha-4");
+
+        assertThat(poll.holdBack(), is(false));
+    }
+
+    @Test
+    public void shouldReusePrefetchedRevisionData() {
+        AtomicInteger calls = new AtomicInteger();
+        Provider provider = new GitProvider() {
+            @Override
+            public void populateRevisionData(GitConfig gitConfig, String prId, String prSHA, Map<String, String> data) {
+                calls.incrementAndGet();
+                data.put("PR_ID", prId);
+            }
+        };
+        RevisionDataEnricher enricher = new RevisionDataEnricher(2, 10, 1000);
+
+        enricher.prefetch(provider, gitConfig, Collections.singletonMap("2", "sha-2"));
+        RevisionDataEnricher.Poll poll = enricher.startPoll();
+
+        assertThat(poll.enrich(provider, gitConfig, "2", "sha-2").get("PR_ID"), is("2"));
+        assertThat(calls.get(), is(1));
+        assertThat(poll.getCompleted(), is(1));
+    }
+
+    @Test
+    public void shouldEnrichOnThePollingThreadWhenTheQueueIsFull() {
+        CountDownLatch release = new CountDownLatch(1);
+        Provider provider = new GitProvider() {
+            @Override
+            public void populateRevisionData(GitConfig gitConfig, String prId, String prSHA, Map<String, String> data) {
+                if (!prId.equals("7")) {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                data.put("PR_ID", prId);
+            }
+        };
+        RevisionDataEnricher enricher = new RevisionDataEnricher(1, 1, 1000);
+        Map<String, String> busy = new HashMap<>();
+        busy.put("5", "sha-5");
+        busy.put("6", "sha-6");
+        enricher.prefetch(provider, gitConfig, busy);
+
+        RevisionDataEnricher.Poll poll = enricher.startPoll();
+        Map<String, String> data = poll.enrich(provider, gitConfig, "7", "sha-7");
+        release.countDown();
+
+        assertThat(data.get("PR_ID"), is("7"));
+        assertThat(poll.getCompleted(), is(1));
+        assertThat(poll.getTimedOut(), is(0));
+    }
+}
@@ -0,0 +1,37 @@
+package in.ashwanthkumar.gocd.github.provider.bitbucket;
+
+import com.cdancy.bitbucket.rest.BitbucketClient;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class BitbucketClientPoolTest {
+
+    @Test
+    public void shouldBuildOneClientPerEndpointAndCredentials() {
+        AtomicInteger clientsBuilt = new AtomicInteger();
+        BitbucketClientPool pool = new BitbucketClientPool(4, TimeUnit.MINUTES.toMillis(1), (endpoint, credentials) -> {
+            clientsBuilt.incrementAndGet();
+            return BitbucketClient.builder().endPoint(endpoint).credentials(credentials).build();
+        });
+
+        BitbucketClient first;
+        try (BitbucketClientPool.Lease lease = pool.acquire("http://localhost:7990", "dXNlcjpwYXNzd29yZA==")) {
+            first = lease.api();
+        }
+        for (int i = 0; i < 100; i++) {
+            try (BitbucketClientPool.Lease lease = pool.acquire("http://localhost:7990", "dXNlcjpwYXNzd29yZA==")) {
+                assertThat(lease.api(), is(sameInstance(first)));
+            }
+        }
+
+        assertThat(clientsBuilt.get(), is(1));
+        assertThat(pool.size(), is(1));
+        pool.close();
+    }
+}
@@ -0,0 +1,64 @@
+package in.ashwanthkumar.gocd.github.provider.bitbucket;
+
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequestPage;
+import com.cdancy.bitbucket.rest.features.PullRequestApi;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+public class BitbucketPullRequestIndexTest {
+
+    @Test
+    public void shouldPageThroughAllOpenPullRequestsOnce() {
+        PullRequestApi api = mock(PullRequestApi.class);
+        PullRequest first = pullRequest(1);
+        PullRequest second = pullRequest(2);
+        PullRequest third = pullRequest(3);
+        PullRequestPage firstPage = page(false, 2, first, second);
+        PullRequestPage lastPage = page(true, 0, third);
+        when(api.list("PROJ", "repo", null, null, "OPEN", "NEWEST", true, true, 0, BitbucketPullRequestIndex.PAGE_SIZE)).thenReturn(firstPage);
+        when(api.list("PROJ", "repo", null, null, "OPEN", "NEWEST", true, true, 2, BitbucketPullRequestIndex.PAGE_SIZE)).thenReturn(lastPage);
+
+        BitbucketPullRequestIndex index = new BitbucketPullRequestIndex(TimeUnit.MINUTES.toMillis(1));
+
+        assertThat(index.get(api, "https://bitbucket", "PROJ", "repo", 3), is(third));
+        assertThat(index.get(api, "https://bitbucket", "PROJ", "repo", 1), is(first));
+        assertThat(index.get(api, "https://bitbucket", "PROJ", "repo", 2), is(second));
+        verify(api, times(1)).list("PROJ", "repo", null, null, "OPEN", "NEWEST", true, true, 0, BitbucketPullRequestIndex.PAGE_SIZE);
+        verify(api, times(1)).list("PROJ", "repo", null, null, "OPEN", "NEWEST", true, true, 2, BitbucketPullRequestIndex.PAGE_SIZE);
+    }
+
+    @Test
+    public void shouldNotRebuildRightAwayForPullRequestsThatAreNotOpen() {
+        PullRequestApi api = mock(PullRequestApi.class);
+        PullRequestPage page = page(true, 0, pullRequest(1));
+        when(api.list("PROJ", "repo", null, null, "OPEN", "NEWEST", true, true, 0, BitbucketPullRequestIndex.PAGE_SIZE)).thenReturn(page);
+
+        BitbucketPullRequestIndex index = new BitbucketPullRequestIndex(TimeUnit.MINUTES.toMillis(1));
+
+        assertThat(index.get(api, "https://bitbucket", "PROJ", "repo", 7), is(nullValue()));
+        assertThat(index.get(api, "https://bitbucket", "PROJ", "repo", 7), is(nullValue()));
+        verify(api, times(1)).list("PROJ", "repo", null, null, "OPEN", "NEWEST", true, true, 0, BitbucketPullRequestIndex.PAGE_SIZE);
+    }
+
+    private PullRequest pullRequest(int id) {
+        PullRequest pullRequest = mock(PullRequest.class);
+        when(pullRequest.id()).thenReturn(id);
+        return pullRequest;
+    }
+
+    private PullRequestPage page(boolean isLastPage, int nextPageStart, PullRequest... pullRequests) {
+        PullRequestPage page = mock(PullRequestPage.class);
+        when(page.values()).thenReturn(Arrays.asList(pullRequests));
+        when(page.isLastPage()).thenReturn(isLastPage);
+        when(page.nextPageStart()).thenReturn(nextPageStart);
+        return page;
+    }
+}
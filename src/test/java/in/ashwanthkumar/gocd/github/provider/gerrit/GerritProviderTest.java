@@ -1,9 +1,20 @@
 package in.ashwanthkumar.gocd.github.provider.gerrit;
 
+import com.sun.net.httpserver.HttpServer;
+import com.tw.go.plugin.model.GitConfig;
 import in.ashwanthkumar.gocd.github.provider.Provider;
+import in.ashwanthkumar.gocd.github.provider.PullRequestHeads;
 import in.ashwanthkumar.gocd.github.settings.scm.PluginConfigurationView;
 import org.junit.Test;
 
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import static org.hamcrest.CoreMatchers.hasItems;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
@@ -23,9 +34,9 @@ public class GerritProviderTest extends in.ashwanthkumar.gocd.github.provider.Ab
         PluginConfigurationView scmConfigurationView = getScmView();
 
         assertThat(scmConfigurationView.fields().keySet(),
-                   hasItems("url", "username", "password", "defaultBranch", "shallowClone")
+                   hasItems("url", "username", "password", "defaultBranch", "shallowClone", "sharedCache", "cloneFilter", "sparsePaths")
         );
-        assertThat(scmConfigurationView.fields().size(), is(5));
+        assertThat(scmConfigurationView.fields().size(), is(8));
     }
 
     @Test
@@ -36,6 +47,93 @@ public class GerritProviderTest extends in.ashwanthkumar.gocd.github.provider.Ab
         assertThat(generalConfigurationView.hasConfigurationView(), is(false));
     }
 
+    @Test
+    public void shouldListCurrentRevisionOfOpenChangesThroughRest() throws Exception {
+        final List<String> queries = new ArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/changes/", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            queries.add(query);
+            String body = query.contains("S=0")
+                    ? ")]}'\n[" + change(12345, 7, false) + ", " + change(12346, 1, true) + "]"
+                    : ")]}'\n[" + change(12401, 2, false) + "]";
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        System.setProperty(GerritProvider.REST_ENDPOINT_PROPERTY, "http://localhost:" + server.getAddress().getPort());
+        try {
+            GitConfig gitConfig = new GitConfig("ssh://gocd@gerrit.example.com:29418/team/project", null, null, null, true, false);
+
+            PullRequestHeads heads = new GerritProvider().listHeadsSince(gitConfig, null);
+
+            Map<String, String> expected = new HashMap<>();
+            expected.put("45/12345/7", "sha-12345-7");
+            expected.put("46/12346/1", "sha-12346-1");
+            expected.put("01/12401/2", "sha-12401-2");
+            assertThat(heads.isComplete(), is(true));
+            assertThat(heads.getUpdatedHeads(), is(expected));
+            assertThat(queries.size(), is(2));
+            assertThat(queries.get(0).contains("q=status:open+project:team/project"), is(true));
+            assertThat(queries.get(0).contains("o=CURRENT_REVISION"), is(true));
+            assertThat(queries.get(1).contains("S=2"), is(true));
+        } finally {
+            System.clearProperty(GerritProvider.REST_ENDPOINT_PROPERTY);
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void shouldKeepOnlyTheLatestPatchsetOfEveryChange() {
+        Map<String, String> refs = new HashMap<>();
+        refs.put("45/12345/1", "sha-12345-1");
+        refs.put("45/12345/10", "sha-12345-10");
+        refs.put("45/12345/9", "sha-12345-9");
+        refs.put("45/12345/meta", "sha-12345-meta");
+        refs.put("46/12346/2", "sha-12346-2");
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("45/12345/10", "sha-12345-10");
+        expected.put("46/12346/2", "sha-12346-2");
+        assertThat(new GerritProvider().collapseBranchToRevisionMap(refs), is(expected));
+    }
+
+    @Test
+    public void shouldFetchOnlyTheCurrentPatchsetOfOneChange() {
+        assertThat(new GerritProvider().getRefSpec("45/12345/7"), is("+refs/changes/45/12345/7:refs/changes/45/12345/7"));
+    }
+
+    @Test
+    public void shouldParseProjectFromCloneUrl() {
+        GerritProvider provider = new GerritProvider();
+
+        assertThat(provider.projectOf("https://gerrit.example.com/a/team/project.git", "https://gerrit.example.com"), is("team/project"));
+        assertThat(provider.projectOf("ssh://gocd@gerrit.example.com:29418/team/project", null), is("team/project"));
+        assertThat(provider.projectOf("gocd@gerrit.example.com:team/project.git", null), is("team/project"));
+        assertThat(provider.projectOf("https://gerrit.example.com/r/a/team/project.git", "https://gerrit.example.com/r"), is("team/project"));
+        assertThat(provider.projectOf("https://gerrit.example.com/r/team/project", "https://gerrit.example.com/r/"), is("team/project"));
+    }
+
+    @Test
+    public void shouldKeepContextPathOfRestEndpoint() {
+        GerritProvider provider = new GerritProvider();
+
+        assertThat(provider.restEndpoint("https://gerrit.example.com/a/team/project.git"), is("https://gerrit.example.com"));
+        assertThat(provider.restEndpoint("https://gerrit.example.com:8443/r/a/team/project.git"), is("https://gerrit.example.com:8443/r"));
+        assertThat(provider.restEndpoint("https://gerrit.example.com/team/project.git"), is("https://gerrit.example.com"));
+        assertThat(provider.restEndpoint("ssh://gocd@gerrit.example.com:29418/team/project"), is((String) null));
+    }
+
+    private static String change(int number, int patchset, boolean moreChanges) {
+        String sha = String.format("sha-%d-%d", number, patchset);
+        return String.format("{\"_number\": %d, \"current_revision\": \"%s\", " +
+                        "\"revisions\": {\"%s\": {\"_number\": %d, \"ref\": \"refs/changes/%02d/%d/%d\"}}%s}",
+                number, sha, sha, patchset, number % 100, number, patchset, moreChanges ? ", \"_more_changes\": true" : "");
+    }
+
     @Override
     protected Provider getProvider() {
         return new GerritProvider();
@@ -23,9 +23,9 @@ public class GitProviderTest extends AbstractProviderTest {
         PluginConfigurationView scmConfigurationView = getScmView();
 
         assertThat(scmConfigurationView.fields().keySet(),
-                   hasItems("url", "username", "password", "branchwhitelist", "branchblacklist", "defaultBranch", "shallowClone")
+                   hasItems("url", "username", "password", "branchwhitelist", "branchblacklist", "defaultBranch", "shallowClone", "sharedCache", "cloneFilter", "sparsePaths")
         );
-        assertThat(scmConfigurationView.fields().size(), is(7));
+        assertThat(scmConfigurationView.fields().size(), is(10));
     }
 
     @Test
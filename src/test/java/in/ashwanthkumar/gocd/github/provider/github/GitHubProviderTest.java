@@ -1,15 +1,88 @@
 package in.ashwanthkumar.gocd.github.provider.github;
 
+import com.sun.net.httpserver.HttpServer;
+import com.tw.go.plugin.model.GitConfig;
 import in.ashwanthkumar.gocd.github.provider.AbstractProviderTest;
 import in.ashwanthkumar.gocd.github.provider.Provider;
+import in.ashwanthkumar.gocd.github.provider.PullRequestHeads;
 import in.ashwanthkumar.gocd.github.settings.scm.PluginConfigurationView;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.hamcrest.CoreMatchers.hasItems;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.assertThat;
 
 public class GitHubProviderTest extends AbstractProviderTest {
+    private HttpServer server;
+    private final List<String> requestedQueries = new ArrayList<>();
+    private final AtomicInteger pullRequestLookups = new AtomicInteger();
+    private final AtomicInteger userLookups = new AtomicInteger();
+
+    @Before
+    public void startGitHubStandIn() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/repos/owner/repo", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            String body;
+            if (path.equals("/repos/owner/repo")) {
+                body = "{\"name\": \"repo\", \"full_name\": \"owner/repo\", \"owner\": {\"login\": \"owner\"}}";
+            } else if (path.equals("/repos/owner/repo/pulls")) {
+                requestedQueries.add(exchange.getRequestURI().getQuery());
+                body = "[" +
+                        pullRequest(3, "open", "sha-3", "2020-01-03T00:00:00Z") + "," +
+                        pullRequest(2, "closed", "sha-2", "2020-01-02T00:00:00Z") + "," +
+                        pullRequest(1, "open", "sha-1", "2019-12-31T00:00:00Z") +
+                        "]";
+            } else if (path.startsWith("/repos/owner/repo/pulls/")) {
+                pullRequestLookups.incrementAndGet();
+                body = pullRequestDetails(Integer.parseInt(path.substring("/repos/owner/repo/pulls/".length())));
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.createContext("/users/jane", exchange -> {
+            userLookups.incrementAndGet();
+            byte[] bytes = ("{\"login\": \"jane\", \"name\": \"Jane\", \"email\": \"jane@example.com\", " +
+                    "\"created_at\": \"2020-01-01T00:00:00Z\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        System.setProperty(GitHubProvider.API_ENDPOINT_PROPERTY, "http://localhost:" + server.getAddress().getPort());
+        System.setProperty("go.plugin.github.pr.populate-details", "N");
+    }
+
+    @After
+    public void stopGitHubStandIn() {
+        System.clearProperty(GitHubProvider.API_ENDPOINT_PROPERTY);
+        System.clearProperty("go.plugin.github.pr.populate-details");
+        server.stop(0);
+    }
 
     @Test
     public void shouldReturnCorrectScmSettingsTemplate() throws Exception {
@@ -23,9 +96,9 @@ public class GitHubProviderTest extends AbstractProviderTest {
         PluginConfigurationView scmConfigurationView = getScmView();
 
         assertThat(scmConfigurationView.fields().keySet(),
-                   hasItems("url", "username", "password", "defaultBranch", "shallowClone",  "branchwhitelist", "branchblacklist")
+                   hasItems("url", "username", "password", "defaultBranch", "shallowClone",  "branchwhitelist", "branchblacklist", "sharedCache", "cloneFilter", "sparsePaths")
         );
-        assertThat(scmConfigurationView.fields().size(), is(7));
+        assertThat(scmConfigurationView.fields().size(), is(10));
     }
 
     @Test
@@ -36,6 +109,109 @@ public class GitHubProviderTest extends AbstractProviderTest {
         assertThat(generalConfigurationView.hasConfigurationView(), is(false));
     }
 
+    @Test
+    public void shouldListOpenPullRequestHeadsWithoutCursor() {
+        PullRequestHeads heads = new GitHubProvider().listHeadsSince(gitConfig(), null);
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("3", "sha-3");
+        expected.put("1", "sha-1");
+        assertThat(heads.isComplete(), is(true));
+        assertThat(heads.getUpdatedHeads(), is(expected));
+        assertThat(heads.getCursor(), is("2020-01-03T00:00:00Z"));
+        assertThat(requestedQueries.get(0).contains("state=open"), is(true));
+    }
+
+    @Test
+    public void shouldStopListingAtTheWatermark() {
+        PullRequestHeads heads = new GitHubProvider().listHeadsSince(gitConfig(), "2020-01-01T00:00:00Z");
+
+        assertThat(heads.isComplete(), is(false));
+        assertThat(heads.getUpdatedHeads(), is(Collections.singletonMap("3", "sha-3")));
+        assertThat(heads.applyTo(Collections.singletonMap("2", "sha-2")), is(Collections.singletonMap("3", "sha-3")));
+        assertThat(heads.getCursor(), is("2020-01-03T00:00:00Z"));
+        assertThat(requestedQueries.get(0).contains("sort=updated"), is(true));
+        assertThat(requestedQueries.get(0).contains("direction=desc"), is(true));
+    }
+
+    @Test
+    public void shouldKeepThreadCountFlatAcrossPolls() {
+        System.setProperty("go.plugin.github.pr.populate-details", "Y");
+        GitHubProvider provider = new GitHubProvider();
+        provider.populateRevisionData(gitConfig(), "5000", "sha-5000", new HashMap<>());
+        int threadsAfterFirstPoll = Thread.activeCount();
+
+        for (int prId = 5001; prId <= 6000; prId++) {
+            Map<String, String> data = new HashMap<>();
+            provider.populateRevisionData(gitConfig(), String.valueOf(prId), "sha-" + prId, data);
+            assertThat(data.get("PR_TITLE"), is("PR " + prId));
+        }
+
+        assertThat(pullRequestLookups.get(), is(1001));
+        assertThat(Thread.activeCount(), is(lessThanOrEqualTo(threadsAfterFirstPoll + 5)));
+    }
+
+    @Test
+    public void shouldLookUpTheAuthorOfSeveralPullRequestsOnlyOnce() {
+        System.setProperty("go.plugin.github.pr.populate-details", "Y");
+        GitHubProvider provider = new GitHubProvider();
+
+        for (int prId = 9001; prId <= 9003; prId++) {
+            Map<String, String> data = new HashMap<>();
+            provider.populateRevisionData(gitConfig(), String.valueOf(prId), "sha-" + prId, data);
+            assertThat(data.get("PR_AUTHOR"), is("Jane"));
+            assertThat(data.get("PR_AUTHOR_EMAIL"), is("jane@example.com"));
+        }
+
+        assertThat(pullRequestLookups.get(), is(3));
+        assertThat(userLookups.get(), is(1));
+    }
+
+    @Test
+    public void shouldLookUpPullRequestAgainOnceItsHeadMoved() {
+        System.setProperty("go.plugin.github.pr.populate-details", "Y");
+        GitHubProvider provider = new GitHubProvider();
+
+        provider.populateRevisionData(gitConfig(), "9101", "sha-9101", new HashMap<>());
+        provider.populateRevisionData(gitConfig(), "9101", "sha-9101", new HashMap<>());
+        assertThat(pullRequestLookups.get(), is(1));
+
+        Map<String, String> data = new HashMap<>();
+        provider.populateRevisionData(gitConfig(), "9101", "sha-9101-moved", data);
+
+        assertThat(pullRequestLookups.get(), is(2));
+        assertThat(data.get("PR_TITLE"), is("PR 9101"));
+    }
+
+    @Test
+    public void shouldBuildRefSpecForASinglePullRequest() {
+        assertThat(new GitHubProvider().getRefSpec("42"), is("+refs/pull/42/head:refs/remotes/origin/pull-request/42"));
+    }
+
+    private GitConfig gitConfig() {
+        return new GitConfig("https://github.example.com/owner/repo.git", "user", "token", null, true, false);
+    }
+
+    private static String pullRequest(int number, String state, String headSHA, String updatedAt) {
+        return String.format("{\"number\": %d, \"state\": \"%s\", \"updated_at\": \"%s\", " +
+                        "\"diff_url\": \"https://github.example.com/owner/repo/pull/%d.diff\", " +
+                        "\"head\": {\"sha\": \"%s\", \"label\": \"owner:pr-%d\"}}",
+                number, state, updatedAt, number, headSHA, number);
+    }
+
+    /**
+     * Like GitHub, the pull request carries only the login of its author, name and email take a /users lookup.
+     */
+    private static String pullRequestDetails(int number) {
+        return String.format("{\"number\": %d, \"state\": \"open\", \"title\": \"PR %d\", \"body\": \"\", " +
+                        "\"diff_url\": \"https://github.example.com/owner/repo/pull/%d.diff\", " +
+                        "\"html_url\": \"https://github.example.com/owner/repo/pull/%d\", " +
+                        "\"head\": {\"sha\": \"sha-%d\", \"label\": \"owner:pr-%d\"}, " +
+                        "\"base\": {\"sha\": \"base\", \"label\": \"owner:master\"}, " +
+                        "\"user\": {\"login\": \"jane\", \"url\": \"/users/jane\"}}",
+                number, number, number, number, number, number);
+    }
+
     @Override
     protected Provider getProvider() {
         return new GitHubProvider();
@@ -0,0 +1,73 @@
+package in.ashwanthkumar.gocd.github.provider.gitlab;
+
+import org.gitlab4j.api.GitLabApi;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class GitLabApiPoolTest {
+
+    @Test
+    public void shouldReuseClientForSameServerAndToken() {
+        GitLabApiPool pool = new GitLabApiPool(4, TimeUnit.MINUTES.toMillis(1), GitLabApi::new);
+
+        GitLabApi first;
+        try (GitLabApiPool.Lease lease = pool.acquire("https://gitlab.com", "token")) {
+            first = lease.api();
+        }
+        try (GitLabApiPool.Lease lease = pool.acquire("https://gitlab.com", "token")) {
+            assertThat(lease.api(), is(sameInstance(first)));
+        }
+        assertThat(pool.size(), is(1));
+        pool.close();
+    }
+
+    @Test
+    public void shouldCreateSeparateClientsPerToken() {
+        GitLabApiPool pool = new GitLabApiPool(4, TimeUnit.MINUTES.toMillis(1), GitLabApi::new);
+
+        try (GitLabApiPool.Lease first = pool.acquire("https://gitlab.com", "token-1");
+             GitLabApiPool.Lease second = pool.acquire("https://gitlab.com", "token-2")) {
+            assertThat(first.api(), is(not(sameInstance(second.api()))));
+        }
+        assertThat(pool.size(), is(2));
+        pool.close();
+    }
+
+    @Test
+    public void shouldBoundThePoolSize() {
+        GitLabApiPool pool = new GitLabApiPool(2, TimeUnit.MINUTES.toMillis(1), GitLabApi::new);
+
+        for (int i = 0; i < 5; i++) {
+            pool.acquire("https://gitlab" + i + ".com", "token").close();
+        }
+
+        assertThat(pool.size(), is(2));
+        pool.close();
+    }
+
+    @Test
+    public void shouldEvictIdleClients() throws InterruptedException {
+        GitLabApiPool pool = new GitLabApiPool(4, 1, GitLabApi::new);
+        pool.acquire("https://gitlab.com", "token").close();
+
+        Thread.sleep(10);
+        pool.acquire("https://gitlab.example.com", "token").close();
+
+        assertThat(pool.size(), is(1));
+        pool.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotHandOutClientsAfterClose() {
+        GitLabApiPool pool = new GitLabApiPool(4, TimeUnit.MINUTES.toMillis(1), GitLabApi::new);
+        pool.close();
+
+        pool.acquire("https://gitlab.com", "token");
+    }
+}
@@ -1,15 +1,63 @@
 package in.ashwanthkumar.gocd.github.provider.gitlab;
 
+import com.sun.net.httpserver.HttpServer;
+import com.tw.go.plugin.model.GitConfig;
 import in.ashwanthkumar.gocd.github.provider.AbstractProviderTest;
 import in.ashwanthkumar.gocd.github.provider.Provider;
 import in.ashwanthkumar.gocd.github.settings.scm.PluginConfigurationView;
+import org.gitlab4j.api.GitLabApi;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.hamcrest.CoreMatchers.hasItems;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.assertThat;
 
 public class GitLabProviderTest extends AbstractProviderTest {
+    private static final String MERGE_REQUESTS_PATH = "/api/v4/projects/group/repo/merge_requests/";
+
+    private HttpServer server;
+    private final AtomicInteger mergeRequestLookups = new AtomicInteger();
+
+    @Before
+    public void startGitLabStandIn() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/v4/projects", exchange -> {
+            // the project path is sent URL-encoded, getPath() decodes it
+            String path = exchange.getRequestURI().getPath();
+            if (!path.startsWith(MERGE_REQUESTS_PATH)) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            mergeRequestLookups.incrementAndGet();
+            int iid = Integer.parseInt(path.substring(MERGE_REQUESTS_PATH.length()));
+            byte[] bytes = mergeRequest(iid).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopGitLabStandIn() {
+        server.stop(0);
+    }
+
     @Test
     public void shouldReturnCorrectScmSettingsTemplate() throws Exception {
         PluginConfigurationView scmConfigurationView = getScmView();
@@ -22,9 +70,9 @@ public class GitLabProviderTest extends AbstractProviderTest {
         PluginConfigurationView scmConfigurationView = getScmView();
 
         assertThat(scmConfigurationView.fields().keySet(),
-                hasItems("url", "username", "password", "defaultBranch", "shallowClone")
+                hasItems("url", "username", "password", "defaultBranch", "shallowClone", "sharedCache", "cloneFilter", "sparsePaths")
         );
-        assertThat(scmConfigurationView.fields().size(), is(5));
+        assertThat(scmConfigurationView.fields().size(), is(8));
     }
 
     @Test
@@ -35,6 +83,39 @@ public class GitLabProviderTest extends AbstractProviderTest {
         assertThat(generalConfigurationView.hasConfigurationView(), is(false));
     }
 
+    @Test
+    public void shouldKeepOneClientAndThreadCountFlatAcrossPolls() {
+        AtomicInteger clientsCreated = new AtomicInteger();
+        GitLabApiPool pool = new GitLabApiPool(4, TimeUnit.MINUTES.toMillis(1), (serverUrl, token) -> {
+            clientsCreated.incrementAndGet();
+            return new GitLabApi(serverUrl, token);
+        });
+        GitLabProvider provider = new GitLabProvider(pool);
+        GitConfig gitConfig = new GitConfig(String.format("http://localhost:%d/group/repo.git", server.getAddress().getPort()),
+                "user", "token", null, true, false);
+        provider.populateRevisionData(gitConfig, "5000", "sha-5000", new HashMap<>());
+        int threadsAfterFirstPoll = Thread.activeCount();
+
+        for (int prId = 5001; prId <= 6000; prId++) {
+            Map<String, String> data = new HashMap<>();
+            provider.populateRevisionData(gitConfig, String.valueOf(prId), "sha-" + prId, data);
+            assertThat(data.get("PR_TITLE"), is("MR " + prId));
+        }
+
+        assertThat(mergeRequestLookups.get(), is(1001));
+        assertThat(clientsCreated.get(), is(1));
+        assertThat(Thread.activeCount(), is(lessThanOrEqualTo(threadsAfterFirstPoll + 5)));
+        pool.close();
+    }
+
+    private static String mergeRequest(int iid) {
+        return String.format("{\"id\": %d, \"iid\": %d, \"state\": \"opened\", \"sha\": \"sha-%d\", " +
+                        "\"title\": \"MR %d\", \"description\": \"\", \"source_branch\": \"mr-%d\", " +
+                        "\"target_branch\": \"master\", \"web_url\": \"https://gitlab.example.com/group/repo/merge_requests/%d\", " +
+                        "\"author\": {\"username\": \"jane\", \"name\": \"Jane\", \"email\": \"jane@example.com\"}}",
+                iid, iid, iid, iid, iid, iid);
+    }
+
     @Override
     protected Provider getProvider() {
         return new GitLabProvider();
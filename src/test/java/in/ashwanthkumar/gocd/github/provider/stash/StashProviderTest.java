@@ -23,9 +23,9 @@ public class StashProviderTest extends AbstractProviderTest {
         PluginConfigurationView scmConfigurationView = getScmView();
 
         assertThat(scmConfigurationView.fields().keySet(),
-                   hasItems("url", "username", "password", "defaultBranch", "shallowClone")
+                   hasItems("url", "username", "password", "defaultBranch", "shallowClone", "sharedCache", "cloneFilter", "sparsePaths")
         );
-        assertThat(scmConfigurationView.fields().size(), is(5));
+        assertThat(scmConfigurationView.fields().size(), is(8));
     }
 
     @Test
@@ -0,0 +1,95 @@
+package in.ashwanthkumar.gocd.github.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ClientPoolTest {
+
+    @Test
+    public void shouldNotHoldUpOtherServersWhileBuildingAClient() throws Exception {
+        CountDownLatch slowBuildStarted = new CountDownLatch(1);
+        CountDownLatch releaseSlowBuild = new CountDownLatch(1);
+        ClientPool<String> pool = new ClientPool<>("test", 4, TimeUnit.MINUTES.toMillis(1), (serverUrl, credentials) -> {
+            if (serverUrl.equals("https://slow.example.com")) {
+                slowBuildStarted.countDown();
+                awaitQuietly(releaseSlowBuild);
+            }
+            return serverUrl;
+        }, client -> {
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> slow = executor.submit(() -> {
+                try (ClientPool<String>.Lease lease = pool.acquire("https://slow.example.com", "token")) {
+                    return lease.api();
+                }
+            });
+            assertThat(slowBuildStarted.await(5, TimeUnit.SECONDS), is(true));
+
+            try (ClientPool<String>.Lease lease = pool.acquire("https://fast.example.com", "token")) {
+                assertThat(lease.api(), is("https://fast.example.com"));
+            }
+
+            releaseSlowBuild.countDown();
+            assertThat(slow.get(5, TimeUnit.SECONDS), is("https://slow.example.com"));
+        } finally {
+            releaseSlowBuild.countDown();
+            executor.shutdownNow();
+            pool.close();
+        }
+    }
+
+    @Test
+    public void shouldBuildAClientOnlyOnceWhenAskedForItConcurrently() throws Exception {
+        AtomicInteger clientsBuilt = new AtomicInteger();
+        CountDownLatch buildStarted = new CountDownLatch(1);
+        CountDownLatch releaseBuild = new CountDownLatch(1);
+        ClientPool<String> pool = new ClientPool<>("test", 4, TimeUnit.MINUTES.toMillis(1), (serverUrl, credentials) -> {
+            clientsBuilt.incrementAndGet();
+            buildStarted.countDown();
+            awaitQuietly(releaseBuild);
+            return serverUrl;
+        }, client -> {
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] leases = new Future<?>[4];
+            for (int i = 0; i < leases.length; i++) {
+                leases[i] = executor.submit(() -> {
+                    try (ClientPool<String>.Lease lease = pool.acquire("https://github.com", "token")) {
+                        return lease.api();
+                    }
+                });
+            }
+            assertThat(buildStarted.await(5, TimeUnit.SECONDS), is(true));
+            releaseBuild.countDown();
+            for (Future<?> lease : leases) {
+                assertThat(lease.get(5, TimeUnit.SECONDS), is((Object) "https://github.com"));
+            }
+
+            assertThat(clientsBuilt.get(), is(1));
+            assertThat(pool.size(), is(1));
+        } finally {
+            releaseBuild.countDown();
+            executor.shutdownNow();
+            pool.close();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
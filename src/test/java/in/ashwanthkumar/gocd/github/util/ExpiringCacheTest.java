@@ -0,0 +1,71 @@
+package in.ashwanthkumar.gocd.github.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ExpiringCacheTest {
+    private final AtomicLong now = new AtomicLong(1000);
+
+    @Test
+    public void shouldReturnCachedValueWithinTtl() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>("test", 10, 100, now::get);
+        cache.put("login", "Jane Doe");
+
+        now.addAndGet(99);
+
+        assertThat(cache.get("login"), is("Jane Doe"));
+    }
+
+    @Test
+    public void shouldExpireValueAfterTtl() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>("test", 10, 100, now::get);
+        cache.put("login", "Jane Doe");
+
+        now.addAndGet(100);
+
+        assertThat(cache.get("login"), is(nullValue()));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntryWhenFull() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>("test", 2, 100, now::get);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+
+        assertThat(cache.get("a"), is("1"));
+        assertThat(cache.get("b"), is(nullValue()));
+        assertThat(cache.get("c"), is("3"));
+    }
+
+    @Test
+    public void shouldLoadMissingValuesOnlyOnce() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>("test", 10, 100, now::get);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("a", key -> key + loads.incrementAndGet());
+        String value = cache.get("a", key -> key + loads.incrementAndGet());
+
+        assertThat(value, is("a1"));
+        assertThat(loads.get(), is(1));
+    }
+
+    @Test
+    public void shouldPeekWithoutCountingHitsOrMisses() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>("peek-test", 10, 100, now::get);
+        cache.put("login", "Jane Doe");
+
+        assertThat(cache.peek("login"), is("Jane Doe"));
+        assertThat(cache.peek("other"), is(nullValue()));
+        assertThat(PluginMetrics.shared().counter("cache.peek-test.hit"), is(0L));
+        assertThat(PluginMetrics.shared().counter("cache.peek-test.miss"), is(0L));
+    }
+}
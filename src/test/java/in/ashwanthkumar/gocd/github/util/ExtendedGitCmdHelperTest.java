@@ -0,0 +1,86 @@
+package in.ashwanthkumar.gocd.github.util;
+
+import com.tw.go.plugin.model.GitConfig;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static in.ashwanthkumar.gocd.github.util.GitRepositories.git;
+import static in.ashwanthkumar.gocd.github.util.GitRepositories.repository;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ExtendedGitCmdHelperTest {
+    @Test
+    public void shouldIncludeTopLevelFilesAndEverythingBelowSparsePaths() {
+        assertThat(ExtendedGitCmdHelper.sparseCheckoutPatterns(Collections.singletonList("docs")),
+                is(Arrays.asList("/*", "!/*/", "/docs/")));
+    }
+
+    @Test
+    public void shouldIncludeFilesOfParentsOfNestedSparsePaths() {
+        assertThat(ExtendedGitCmdHelper.sparseCheckoutPatterns(Arrays.asList("services/api", "services/web")),
+                is(Arrays.asList("/*", "!/*/", "/services/", "!/services/*/", "/services/api/", "/services/web/")));
+    }
+
+    @Test
+    public void shouldDropSparsePathsInsideOtherSparsePaths() {
+        assertThat(ExtendedGitCmdHelper.sparseCheckoutPatterns(Arrays.asList("services/api", "services")),
+                is(Arrays.asList("/*", "!/*/", "/services/")));
+    }
+
+    @Test
+    public void shouldReadSubmodulePathsHoldingSpacesAndDots() {
+        Map<String, String> expected = new HashMap<>();
+        expected.put("libs/a", "libs/a");
+        expected.put("with space", "third party/with space");
+        expected.put("v1.2", "vendor/v1.2");
+
+        assertThat(ExtendedGitCmdHelper.submodulePathsOf("submodule.libs/a.path\nlibs/a\0"
+                + "submodule.with space.path\nthird party/with space\0"
+                + "submodule.v1.2.path\nvendor/v1.2"), is(expected));
+        assertThat(ExtendedGitCmdHelper.submodulePathsOf(null).isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldCheckOutAllSubmodulesInOneUpdate() throws Exception {
+        File root = Files.createTempDirectory("submodules").toFile();
+        try {
+            File superproject = repository(new File(root, "super"));
+            for (String name : Arrays.asList("a", "b", "c")) {
+                repository(new File(root, name));
+                git(superproject, "submodule", "add", "../" + name, "libs/" + name + " dir");
+            }
+            git(superproject, "commit", "-m", "add submodules");
+            File workspace = new File(root, "workspace");
+            git(root, "clone", "--recurse-submodules", superproject.getPath(), workspace.getPath());
+            // new commits in every submodule, already fetched into the workspace so the update needs no transport
+            for (String name : Arrays.asList("a", "b", "c")) {
+                git(new File(root, name), "commit", "--allow-empty", "-m", "second");
+                git(new File(superproject, "libs/" + name + " dir"), "pull", "origin", "master");
+                git(new File(workspace, "libs/" + name + " dir"), "fetch", "origin");
+            }
+            git(superproject, "commit", "-am", "bump submodules");
+            git(workspace, "pull", "--no-recurse-submodules", "origin", "master");
+
+            ExtendedGitCmdHelper git = new ExtendedGitCmdHelper(new GitConfig(superproject.getPath()), workspace);
+            Map<String, Long> millisByPath = git.updateSubmodules(3, null);
+
+            assertThat(new ArrayList<>(millisByPath.keySet()),
+                    is(Arrays.asList("libs/a dir", "libs/b dir", "libs/c dir")));
+            for (String name : Arrays.asList("a", "b", "c")) {
+                assertThat(git(new File(workspace, "libs/" + name + " dir"), "rev-parse", "HEAD"),
+                        is(git(new File(root, name), "rev-parse", "HEAD")));
+            }
+        } finally {
+            FileUtils.deleteQuietly(root);
+        }
+    }
+}
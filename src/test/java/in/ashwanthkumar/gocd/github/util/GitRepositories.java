@@ -0,0 +1,36 @@
+package in.ashwanthkumar.gocd.github.util;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Real git repositories for tests, created and changed with the git found on the path.
+ */
+class GitRepositories {
+    private GitRepositories() {
+    }
+
+    static File repository(File directory) throws Exception {
+        directory.mkdirs();
+        git(directory, "init", "-b", "master");
+        git(directory, "commit", "--allow-empty", "-m", "initial");
+        return directory;
+    }
+
+    static String git(File directory, String... args) throws Exception {
+        List<String> command = new ArrayList<>(Arrays.asList("git", "-c", "user.name=test", "-c",
+                "user.email=test@example.com", "-c", "protocol.file.allow=always"));
+        command.addAll(Arrays.asList(args));
+        Process process = new ProcessBuilder(command).directory(directory).redirectErrorStream(true).start();
+        String output = IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8);
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException(String.format("git %s failed: %s", String.join(" ", args), output));
+        }
+        return output.trim();
+    }
+}
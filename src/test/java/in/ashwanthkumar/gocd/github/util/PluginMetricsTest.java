@@ -0,0 +1,28 @@
+package in.ashwanthkumar.gocd.github.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.assertThat;
+
+public class PluginMetricsTest {
+    @Test
+    public void shouldReportCountersAndGaugesOnOneLine() {
+        PluginMetrics metrics = new PluginMetrics();
+        metrics.increment("poll.count");
+        metrics.increment("poll.count");
+        metrics.gauge("ratelimit.https://api.github.com.remaining", 42);
+
+        String report = metrics.report();
+
+        assertThat(report, containsString("poll.count=2"));
+        assertThat(report, containsString("ratelimit.https://api.github.com.remaining=42"));
+    }
+
+    @Test
+    public void shouldNotReportWhenNothingWasRecorded() {
+        assertThat(new PluginMetrics().report(), is(nullValue()));
+    }
+}
@@ -0,0 +1,94 @@
+package in.ashwanthkumar.gocd.github.util;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static in.ashwanthkumar.gocd.github.util.PollDeadline.Phase.ENRICHMENT;
+import static in.ashwanthkumar.gocd.github.util.PollDeadline.Phase.FETCH;
+import static in.ashwanthkumar.gocd.github.util.PollDeadline.Phase.FILTER;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class PollDeadlineTest {
+    private final AtomicLong now = new AtomicLong(1000);
+
+    @Test
+    public void shouldCapPhaseBudgetByWhatIsLeftOfThePoll() {
+        Map<PollDeadline.Phase, Long> phaseBudgets = new EnumMap<>(PollDeadline.Phase.class);
+        phaseBudgets.put(FETCH, 300L);
+        PollDeadline deadline = new PollDeadline("repo", 1000, phaseBudgets, now::get);
+
+        assertThat(deadline.remainingFor(FETCH), is(300L));
+        assertThat(deadline.remainingFor(ENRICHMENT), is(1000L));
+
+        now.addAndGet(800);
+
+        assertThat(deadline.remainingFor(FETCH), is(200L));
+        assertThat(deadline.remainingFor(ENRICHMENT), is(200L));
+    }
+
+    @Test
+    public void shouldRecordTimePerPhase() {
+        PollDeadline deadline = new PollDeadline("repo", 1000, Collections.emptyMap(), now::get);
+
+        deadline.run(FETCH, () -> now.addAndGet(120));
+        String result = deadline.run(FILTER, () -> {
+            now.addAndGet(5);
+            return "pr-1";
+        });
+
+        assertThat(result, is("pr-1"));
+        assertThat(deadline.getTimings().get(FETCH), is(120L));
+        assertThat(deadline.getTimings().get(FILTER), is(5L));
+        assertThat(deadline.toString(), is("fetch=120ms, filter=5ms"));
+        assertThat(PluginMetrics.shared().gauge("poll.fetch.last-millis"), is(120L));
+    }
+
+    @Test
+    public void shouldNotStartPhaseOnceThePollIsOutOfTime() {
+        PollDeadline deadline = new PollDeadline("repo", 1000, Collections.emptyMap(), now::get);
+        deadline.run(FETCH, () -> now.addAndGet(1000));
+
+        try {
+            deadline.run(FILTER, () -> fail("filter should not run"));
+            fail("expected the poll to time out");
+        } catch (PollTimeoutException e) {
+            assertThat(e.getPhase(), is(FILTER));
+            assertThat(e.getMessage(), is("Poll of repo ran out of time before filter phase"));
+        }
+    }
+
+    @Test
+    public void shouldTimeOutCallsOfThePhaseRunningOnTheThread() {
+        Map<PollDeadline.Phase, Long> phaseBudgets = new EnumMap<>(PollDeadline.Phase.class);
+        phaseBudgets.put(FETCH, 300L);
+        PollDeadline deadline = new PollDeadline("repo", 1000, phaseBudgets, now::get);
+
+        deadline.run(FETCH, () -> {
+            now.addAndGet(100);
+            assertThat(PollDeadline.running().getPhase(), is(FETCH));
+            assertThat(PollDeadline.clientTimeoutMillis(), is(300));
+            deadline.run(FILTER, () -> assertThat(PollDeadline.clientTimeoutMillis(), is(900)));
+            assertThat(PollDeadline.running().getPhase(), is(FETCH));
+        });
+
+        assertThat(PollDeadline.running(), is(nullValue()));
+        assertThat(PollDeadline.clientTimeoutMillis(), is((int) PollDeadline.budgetMillis()));
+    }
+
+    @Test
+    public void shouldNeverHandOutAZeroTimeout() {
+        PollDeadline deadline = new PollDeadline("repo", 1000, Collections.emptyMap(), now::get);
+
+        deadline.run(FETCH, () -> {
+            now.addAndGet(2000);
+            assertThat(PollDeadline.running().getRemainingMillis(), is(1L));
+        });
+    }
+}
@@ -0,0 +1,67 @@
+package in.ashwanthkumar.gocd.github.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Properties;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class PropertyFileSnapshotsTest {
+    private File propertyFile;
+
+    @Before
+    public void setUp() throws Exception {
+        propertyFile = File.createTempFile("credentials", ".properties");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(propertyFile);
+    }
+
+    @Test
+    public void shouldParseFileOnlyOnceWhileItIsUnchanged() throws Exception {
+        FileUtils.writeStringToFile(propertyFile, "login=jane\noauth=token");
+        PropertyFileSnapshots snapshots = new PropertyFileSnapshots();
+
+        snapshots.get(propertyFile);
+        Properties props = snapshots.get(propertyFile);
+
+        assertThat(props.getProperty("login"), is("jane"));
+        assertThat(snapshots.getReloadCount(), is(1L));
+    }
+
+    @Test
+    public void shouldReloadFileWhenItChanges() throws Exception {
+        FileUtils.writeStringToFile(propertyFile, "login=jane\noauth=token");
+        PropertyFileSnapshots snapshots = new PropertyFileSnapshots();
+        snapshots.get(propertyFile);
+
+        FileUtils.writeStringToFile(propertyFile, "login=john\noauth=other-token");
+
+        assertThat(snapshots.get(propertyFile).getProperty("login"), is("john"));
+    }
+
+    @Test
+    public void shouldNotLetCallersChangeTheSnapshot() throws Exception {
+        FileUtils.writeStringToFile(propertyFile, "login=jane");
+        PropertyFileSnapshots snapshots = new PropertyFileSnapshots();
+
+        snapshots.get(propertyFile).setProperty("login", "john");
+
+        assertThat(snapshots.get(propertyFile).getProperty("login"), is("jane"));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void shouldFailWhenFileIsMissing() throws Exception {
+        FileUtils.deleteQuietly(propertyFile);
+
+        new PropertyFileSnapshots().get(propertyFile);
+    }
+}
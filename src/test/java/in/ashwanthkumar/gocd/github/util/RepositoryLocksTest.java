@@ -0,0 +1,128 @@
+package in.ashwanthkumar.gocd.github.util;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RepositoryLocksTest {
+    private final RepositoryLocks locks = new RepositoryLocks(System::currentTimeMillis);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @Test
+    public void shouldShareFetchThatIsInFlight() throws Exception {
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        CountDownLatch finishFetch = new CountDownLatch(1);
+        AtomicInteger fetches = new AtomicInteger();
+        long coalescedBefore = PluginMetrics.shared().counter("repository.fetch.coalesced");
+
+        Future<?> leader = executor.submit(() -> locks.fetch(new File("/tmp/flyweight"), "+refs/pull/*", () -> {
+            fetches.incrementAndGet();
+            fetchStarted.countDown();
+            await(finishFetch);
+        }));
+        fetchStarted.await(5, TimeUnit.SECONDS);
+        Future<?> follower = executor.submit(() -> locks.fetch(new File("/tmp/../tmp/flyweight"), "+refs/pull/*",
+                fetches::incrementAndGet));
+        while (PluginMetrics.shared().counter("repository.fetch.coalesced") == coalescedBefore) {
+            Thread.sleep(10);
+        }
+        finishFetch.countDown();
+        leader.get(5, TimeUnit.SECONDS);
+        follower.get(5, TimeUnit.SECONDS);
+
+        assertThat(fetches.get(), is(1));
+    }
+
+    @Test
+    public void shouldFetchAgainOnceTheFetchInFlightFinished() {
+        AtomicInteger fetches = new AtomicInteger();
+
+        locks.fetch(new File("/tmp/flyweight"), "+refs/pull/*", fetches::incrementAndGet);
+        locks.fetch(new File("/tmp/flyweight"), "+refs/pull/*", fetches::incrementAndGet);
+
+        assertThat(fetches.get(), is(2));
+    }
+
+    @Test
+    public void shouldRethrowFailureOfTheFetch() {
+        try {
+            locks.fetch(new File("/tmp/flyweight"), "+refs/pull/*", () -> {
+                throw new IllegalStateException("fetch failed");
+            });
+            fail("expected the fetch to fail");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("fetch failed"));
+        }
+    }
+
+    @Test
+    public void shouldRethrowErrorOfTheFetchToRequestsThatWaitedForIt() throws Exception {
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        CountDownLatch finishFetch = new CountDownLatch(1);
+        long coalescedBefore = PluginMetrics.shared().counter("repository.fetch.coalesced");
+
+        Future<?> leader = executor.submit(() -> locks.fetch(new File("/tmp/flyweight"), "+refs/pull/*", () -> {
+            fetchStarted.countDown();
+            await(finishFetch);
+            throw new AssertionError("fetch failed");
+        }));
+        fetchStarted.await(5, TimeUnit.SECONDS);
+        Future<?> follower = executor.submit(() -> locks.fetch(new File("/tmp/flyweight"), "+refs/pull/*", () -> {
+        }));
+        while (PluginMetrics.shared().counter("repository.fetch.coalesced") == coalescedBefore) {
+            Thread.sleep(10);
+        }
+        finishFetch.countDown();
+
+        for (Future<?> request : Arrays.asList(leader, follower)) {
+            try {
+                request.get(5, TimeUnit.SECONDS);
+                fail("expected the fetch to fail");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause() instanceof AssertionError, is(true));
+                assertThat(e.getCause().getMessage(), is("fetch failed"));
+            }
+        }
+    }
+
+    @Test
+    public void shouldNotReadWhileWriting() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch finishWrite = new CountDownLatch(1);
+        AtomicInteger state = new AtomicInteger();
+
+        Future<?> writer = executor.submit(() -> locks.write(new File("/tmp/flyweight"), () -> {
+            writing.countDown();
+            await(finishWrite);
+            state.set(1);
+        }));
+        writing.await(5, TimeUnit.SECONDS);
+        Future<Integer> reader = executor.submit(() -> locks.read(new File("/tmp/flyweight"), state::get));
+        Thread.sleep(50);
+        assertThat(reader.isDone(), is(false));
+        finishWrite.countDown();
+
+        writer.get(5, TimeUnit.SECONDS);
+        assertThat(reader.get(5, TimeUnit.SECONDS), is(1));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
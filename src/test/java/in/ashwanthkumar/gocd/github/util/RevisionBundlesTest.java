@@ -0,0 +1,128 @@
+package in.ashwanthkumar.gocd.github.util;
+
+import com.tw.go.plugin.model.GitConfig;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static in.ashwanthkumar.gocd.github.util.GitRepositories.git;
+import static in.ashwanthkumar.gocd.github.util.GitRepositories.repository;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class RevisionBundlesTest {
+    private static final long NOW = TimeUnit.DAYS.toMillis(365);
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("revision-bundles").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Test
+    public void shouldBeDisabledWithoutDirectory() {
+        assertThat(new RevisionBundles(null, 0, () -> NOW).isEnabled(), is(false));
+        assertThat(new RevisionBundles(directory, 0, () -> NOW).isEnabled(), is(true));
+    }
+
+    @Test
+    public void shouldKeepBundlesOfARepositoryTogether() {
+        RevisionBundles bundles = new RevisionBundles(directory, 0, () -> NOW);
+
+        File bundle = bundles.bundleFor("https://github.com/org/repo.git", "abc123");
+
+        assertThat(bundle.getName(), is("abc123.bundle"));
+        assertThat(bundle.getParentFile().getParentFile(), is(directory));
+        assertThat(bundles.bundleFor("https://github.com/org/repo.git", "def456").getParentFile(),
+                is(bundle.getParentFile()));
+        assertThat(bundles.bundleFor("https://github.com/org/other.git", "abc123").getParentFile(),
+                not(bundle.getParentFile()));
+    }
+
+    @Test
+    public void shouldDeleteExpiredBundlesOfEveryRepository() throws Exception {
+        RevisionBundles bundles = new RevisionBundles(directory, TimeUnit.HOURS.toMillis(72), () -> NOW);
+        File expired = fakeBundle(bundles, "https://github.com/org/repo.git", "abc123", TimeUnit.DAYS.toMillis(4));
+        File expiredElsewhere = fakeBundle(bundles, "https://github.com/org/other.git", "abc123",
+                TimeUnit.DAYS.toMillis(5));
+        File recent = fakeBundle(bundles, "https://github.com/org/repo.git", "def456", TimeUnit.HOURS.toMillis(1));
+
+        bundles.deleteExpired();
+
+        assertThat(expired.exists(), is(false));
+        assertThat(expiredElsewhere.exists(), is(false));
+        assertThat(recent.exists(), is(true));
+    }
+
+    @Test
+    public void shouldDeleteExpiredBundlesAtMostHourlyWhenSeeding() throws Exception {
+        AtomicLong now = new AtomicLong(NOW);
+        RevisionBundles bundles = new RevisionBundles(directory, TimeUnit.HOURS.toMillis(72), now::get);
+        File expired = fakeBundle(bundles, "https://github.com/org/repo.git", "abc123", TimeUnit.DAYS.toMillis(4));
+        ExtendedGitCmdHelper git = mock(ExtendedGitCmdHelper.class);
+
+        bundles.seed(git, "https://github.com/org/repo.git", "def456");
+        assertThat(expired.exists(), is(false));
+
+        File expiredSinceTheSweep = fakeBundle(bundles, "https://github.com/org/repo.git", "abc123",
+                TimeUnit.DAYS.toMillis(4));
+        now.addAndGet(TimeUnit.MINUTES.toMillis(30));
+        bundles.seed(git, "https://github.com/org/repo.git", "def456");
+        assertThat(expiredSinceTheSweep.exists(), is(true));
+
+        now.addAndGet(TimeUnit.MINUTES.toMillis(30));
+        bundles.seed(git, "https://github.com/org/repo.git", "def456");
+        assertThat(expiredSinceTheSweep.exists(), is(false));
+    }
+
+    @Test
+    public void shouldSeedWorkspaceFromBundleOfThePoll() throws Exception {
+        File origin = repository(new File(directory, "origin"));
+        git(origin, "checkout", "-b", "pr");
+        FileUtils.writeStringToFile(new File(origin, "change.txt"), "change");
+        git(origin, "add", "change.txt");
+        git(origin, "commit", "-m", "change");
+        String prRevision = git(origin, "rev-parse", "HEAD");
+        git(origin, "checkout", "master");
+        File flyweight = new File(directory, "flyweight");
+        git(directory, "clone", origin.getPath(), flyweight.getPath());
+        File workspace = new File(directory, "workspace");
+        git(directory, "clone", "--single-branch", "--branch", "master", origin.getPath(), workspace.getPath());
+        // the bundle has to be enough, the workspace must not reach the Git host
+        git(workspace, "remote", "set-url", "origin", new File(directory, "unreachable").getPath());
+
+        RevisionBundles bundles = new RevisionBundles(new File(directory, "bundles"), TimeUnit.HOURS.toMillis(72),
+                () -> NOW);
+        GitConfig gitConfig = new GitConfig(origin.getPath());
+        File bundle = bundles.publish(new ExtendedGitCmdHelper(gitConfig, flyweight), origin.getPath(), prRevision,
+                Collections.singletonList("refs/remotes/origin/master"));
+        ExtendedGitCmdHelper workspaceGit = new ExtendedGitCmdHelper(gitConfig, workspace);
+
+        assertThat(bundle.isFile(), is(true));
+        assertThat(workspaceGit.hasRevision(prRevision), is(false));
+        assertThat(bundles.seed(workspaceGit, origin.getPath(), prRevision), is(true));
+        assertThat(workspaceGit.hasRevision(prRevision), is(true));
+    }
+
+    private File fakeBundle(RevisionBundles bundles, String url, String revision, long age) throws Exception {
+        File bundle = bundles.bundleFor(url, revision);
+        FileUtils.writeStringToFile(bundle, "# v2 git bundle");
+        bundle.setLastModified(NOW - age);
+        return bundle;
+    }
+}
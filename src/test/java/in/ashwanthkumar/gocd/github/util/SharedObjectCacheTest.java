@@ -0,0 +1,120 @@
+package in.ashwanthkumar.gocd.github.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertThat;
+
+public class SharedObjectCacheTest {
+    private static final long NOW = TimeUnit.DAYS.toMillis(365);
+
+    private File root;
+
+    @Before
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("shared-object-cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(root);
+    }
+
+    @Test
+    public void shouldKeepOneRepositoryPerUrl() {
+        SharedObjectCache cache = new SharedObjectCache(root, 0, () -> NOW);
+
+        assertThat(cache.repositoryFor("https://github.com/org/repo.git"),
+                is(cache.repositoryFor("https://github.com/org/repo.git")));
+        assertThat(cache.repositoryFor("https://github.com/org/repo.git"),
+                not(cache.repositoryFor("https://github.com/org/other.git")));
+        assertThat(cache.repositoryFor("https://github.com/org/repo.git").getParentFile(), is(root));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedCachesBeyondTheLimit() throws Exception {
+        SharedObjectCache cache = new SharedObjectCache(root, 2048, () -> NOW);
+        File oldest = fakeCache(cache, "https://example.com/oldest.git", TimeUnit.DAYS.toMillis(3));
+        File older = fakeCache(cache, "https://example.com/older.git", TimeUnit.DAYS.toMillis(2));
+        File recent = fakeCache(cache, "https://example.com/recent.git", TimeUnit.MINUTES.toMillis(5));
+
+        cache.evictBeyondLimit();
+
+        assertThat(oldest.exists(), is(false));
+        assertThat(older.exists(), is(false));
+        assertThat(recent.exists(), is(true));
+    }
+
+    @Test
+    public void shouldNotEvictCachesWithinTheLimit() throws Exception {
+        SharedObjectCache cache = new SharedObjectCache(root, 1024 * 1024, () -> NOW);
+        File old = fakeCache(cache, "https://example.com/old.git", TimeUnit.DAYS.toMillis(30));
+
+        cache.evictBeyondLimit();
+
+        assertThat(old.exists(), is(true));
+    }
+
+    @Test
+    public void shouldNotEvictCacheThatIsInUse() throws Exception {
+        SharedObjectCache cache = new SharedObjectCache(root, 0, () -> NOW);
+        File old = fakeCache(cache, "https://example.com/old.git", TimeUnit.DAYS.toMillis(30));
+
+        cache.withLock("https://example.com/old.git", () -> {
+            cache.evictBeyondLimit();
+            return null;
+        });
+
+        assertThat(old.exists(), is(true));
+    }
+
+    @Test
+    public void shouldNotEvictCacheStillBorrowedByAWorkspace() throws Exception {
+        SharedObjectCache cache = new SharedObjectCache(root, 0, () -> NOW);
+        File old = fakeCache(cache, "https://example.com/old.git", TimeUnit.DAYS.toMillis(30));
+        File workspace = new File(root, "workspace");
+        borrow(workspace, old);
+        cache.lendTo(old, workspace);
+
+        cache.evictBeyondLimit();
+
+        assertThat(old.exists(), is(true));
+    }
+
+    @Test
+    public void shouldEvictCacheOnceItsWorkspacesStoppedBorrowing() throws Exception {
+        SharedObjectCache cache = new SharedObjectCache(root, 0, () -> NOW);
+        File old = fakeCache(cache, "https://example.com/old.git", TimeUnit.DAYS.toMillis(30));
+        File recloned = new File(root, "recloned");
+        borrow(recloned, old);
+        cache.lendTo(old, recloned);
+        cache.lendTo(old, new File(root, "deleted"));
+        FileUtils.deleteQuietly(new File(recloned, ".git/objects/info/alternates"));
+
+        cache.evictBeyondLimit();
+
+        assertThat(old.exists(), is(false));
+    }
+
+    private static void borrow(File workspace, File repository) throws Exception {
+        FileUtils.writeStringToFile(new File(workspace, ".git/objects/info/alternates"),
+                new File(repository, "objects").getAbsolutePath() + "\n");
+    }
+
+    private File fakeCache(SharedObjectCache cache, String url, long unusedFor) throws Exception {
+        File repository = cache.repositoryFor(url);
+        FileUtils.writeStringToFile(new File(repository, "objects/pack/pack-1.pack"), new String(new char[1500]));
+        File lastUsed = new File(repository, "gocd-last-used");
+        FileUtils.writeStringToFile(lastUsed, "");
+        lastUsed.setLastModified(NOW - unusedFor);
+        return repository;
+    }
+}